@@ -1,6 +1,6 @@
-//import java.text.ParseException;
-//import java.text.SimpleDateFormat;
-//import java.util.Date;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.List;
 //import java.util.Optional;
 import java.util.Scanner;
@@ -25,6 +25,8 @@ public class Main {
                 case 3 -> manageEmployees();
                 case 4 -> manageInvoices();
                 case 0 -> {
+                    // Xuất lại products.txt để bản văn bản khớp với kho nhị phân
+                    productService.exportToText();
                     System.out.println("Cam on ban da su dung chuong trinh!");
                     return;
                 }
@@ -52,6 +54,9 @@ public class Main {
             System.out.println("5. Cap nhat san pham");
             System.out.println("6. Xoa san pham");
             System.out.println("7. Thong ke kho hang");
+            System.out.println("8. Nhap hang");
+            System.out.println("9. Xem ton kho tai thoi diem");
+            System.out.println("10. Dung lai ton kho tu so kho");
             System.out.println("0. Quay lai");
 
             try {
@@ -123,6 +128,22 @@ public class Main {
                         }
                     }
                     case 7 -> productService.displayInventoryStatistics();
+                    case 8 -> {
+                        String id = getStringInput("Nhap ma san pham: ");
+                        int quantity = getIntInput("Nhap so luong nhap: ");
+                        productService.receiveStock(id, quantity);
+                    }
+                    case 9 -> {
+                        String id = getStringInput("Nhap ma san pham: ");
+                        String time = getStringInput("Nhap thoi diem (dd/MM/yyyy HH:mm): ");
+                        try {
+                            Date date = new SimpleDateFormat("dd/MM/yyyy HH:mm").parse(time);
+                            productService.displayStockAt(id, date);
+                        } catch (ParseException e) {
+                            System.out.println("Thoi diem khong hop le!");
+                        }
+                    }
+                    case 10 -> productService.rebuildStockFromLedger();
                     case 0 -> { return; }
                     default -> System.out.println("Lua chon khong hop le!");
                 }
@@ -252,6 +273,8 @@ public class Main {
             System.out.println("1. Xem danh sach hoa don");
             System.out.println("2. Tim kiem hoa don");
             System.out.println("3. Thong ke hoa don");
+            System.out.println("4. Doanh thu theo ngay");
+            System.out.println("5. Doanh thu theo thang");
             System.out.println("0. Quay lai");
 
             try {
@@ -260,6 +283,8 @@ public class Main {
                     case 1 -> invoiceService.displayInvoices();
                     case 2 -> invoiceService.searchInvoices();
                     case 3 -> invoiceService.displayInvoiceStatistics();
+                    case 4 -> invoiceService.displayDailyRevenue();
+                    case 5 -> invoiceService.displayMonthlyRevenue();
                     case 0 -> { return; }
                     default -> System.out.println("Lua chon khong hop le!");
                 }
@@ -0,0 +1,125 @@
+package benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+// Bộ đo đơn giản cho các benchmark trong thư mục này: chạy khởi động rồi đo trong một khoảng
+// thời gian cố định, in thông lượng, phân vị độ trễ, lượng bộ nhớ cấp phát mỗi lần gọi và GC.
+// Bộ nhớ cấp phát được cộng trên mọi luồng đang sống nên tính cả luồng của ForkJoinPool.
+public class BenchmarkHarness {
+    private static final long WARMUP_NANOS = 2_000_000_000L;
+    private static final long MEASURE_NANOS = 5_000_000_000L;
+    private static final int MAX_SAMPLES = 1_000_000;
+
+    public interface Operation {
+        Object run() throws Exception;
+    }
+
+    private final PrintStream out;
+    private final long warmupNanos;
+    private final long measureNanos;
+    // Giữ kết quả để JIT không loại bỏ phần việc cần đo
+    private int sink;
+
+    public BenchmarkHarness() {
+        this(WARMUP_NANOS, MEASURE_NANOS);
+    }
+
+    public BenchmarkHarness(long warmupNanos, long measureNanos) {
+        this.out = System.out;
+        this.warmupNanos = warmupNanos;
+        this.measureNanos = measureNanos;
+    }
+
+    public void printHeader() {
+        out.printf("%-34s %8s %12s %11s %11s %11s %11s %12s %6s%n",
+            "Benchmark", "So lan", "Lan/giay", "p50 (us)", "p90 (us)", "p99 (us)", "Max (us)", "Byte/lan", "GC");
+    }
+
+    public void measure(String name, Operation operation) throws Exception {
+        // Các service in thông báo ra màn hình, tắt đi trong lúc đo
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long[] samples = new long[1024];
+        int count = 0;
+        long allocated;
+        long gcCount;
+        long elapsed;
+        try {
+            runFor(operation, warmupNanos);
+
+            long allocatedBefore = allocatedBytes();
+            long gcBefore = gcCount();
+            long start = System.nanoTime();
+            long deadline = start + measureNanos;
+            do {
+                long opStart = System.nanoTime();
+                consume(operation.run());
+                long latency = System.nanoTime() - opStart;
+                if (count == samples.length) {
+                    samples = Arrays.copyOf(samples, samples.length * 2);
+                }
+                samples[count++] = latency;
+            } while (System.nanoTime() < deadline && count < MAX_SAMPLES);
+            elapsed = System.nanoTime() - start;
+            allocated = allocatedBefore < 0 ? -1 : allocatedBytes() - allocatedBefore;
+            gcCount = gcCount() - gcBefore;
+        } finally {
+            System.setOut(console);
+        }
+
+        Arrays.sort(samples, 0, count);
+        out.printf("%-34s %8d %12.1f %11.1f %11.1f %11.1f %11.1f %12d %6d%n",
+            name, count, count / (elapsed / 1e9),
+            percentile(samples, count, 0.50) / 1e3,
+            percentile(samples, count, 0.90) / 1e3,
+            percentile(samples, count, 0.99) / 1e3,
+            samples[count - 1] / 1e3,
+            allocated < 0 ? -1 : allocated / count,
+            gcCount);
+    }
+
+    private void runFor(Operation operation, long nanos) throws Exception {
+        long deadline = System.nanoTime() + nanos;
+        do {
+            consume(operation.run());
+        } while (System.nanoTime() < deadline);
+    }
+
+    private void consume(Object result) {
+        sink += result == null ? 0 : System.identityHashCode(result) & 1;
+    }
+
+    private static long percentile(long[] sorted, int count, double p) {
+        int index = (int) Math.ceil(p * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    // Tổng số byte đã cấp phát của mọi luồng đang sống, -1 nếu JVM không hỗ trợ
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean extended = (com.sun.management.ThreadMXBean) threads;
+        long total = 0;
+        for (long bytes : extended.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    private static long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+}
@@ -0,0 +1,339 @@
+package benchmark;
+
+import models.Accessory;
+import models.Computer;
+import models.Customer;
+import models.Employee;
+import models.Invoice;
+import models.Product;
+import utils.FileHandler;
+import utils.InvoicePartitions;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+// Sinh bộ dữ liệu lớn cho kiểm thử tải và benchmark: products.txt, customers.txt, employees.txt,
+// invoices.txt đúng định dạng FileHandler ghi ra. Cùng tham số và seed thì cho cùng dữ liệu.
+//
+// - Độ phổ biến của sản phẩm theo phân phối Zipf (số mũ zipf, 0 là đều nhau)
+// - repeat là xác suất hóa đơn thuộc về một khách hàng đã từng mua trước đó
+//
+// Chạy: java -cp out benchmark.DatasetGenerator --out=thuMuc [--products=1000] [--customers=1000]
+//       [--employees=20] [--invoices=10000] [--seed=42] [--zipf=1.0] [--repeat=0.6]
+//       [--max-items=4] [--months=12]
+public class DatasetGenerator {
+    private static final String[] CPUS = {"Intel i5", "Intel i7", "Intel i9", "AMD Ryzen 5", "AMD Ryzen 7", "Apple M2"};
+    private static final String[] RAMS = {"8GB", "16GB", "32GB", "64GB"};
+    private static final String[] DRIVES = {"256GB SSD", "512GB SSD", "1TB SSD", "2TB HDD"};
+    private static final String[] ACCESSORY_TYPES = {"Mouse", "Keyboard", "Headphone", "Monitor", "Cable"};
+    private static final String[] FAMILY_NAMES = {"Nguyen", "Tran", "Le", "Pham", "Hoang", "Vu", "Dang", "Bui"};
+    private static final String[] GIVEN_NAMES = {"Van An", "Thi Binh", "Minh Chau", "Quoc Dung", "Thu Ha", "Gia Huy"};
+    private static final String[] CITIES = {"TPHCM", "Ha Noi", "Da Nang", "Can Tho", "Hai Phong", "Hue"};
+    private static final String[] POSITIONS = {"Sales", "Cashier", "Manager", "Technician"};
+
+    private final int productCount;
+    private final int customerCount;
+    private final int employeeCount;
+    private final int invoiceCount;
+    private final long seed;
+    private double zipfExponent = 1.0;
+    private double repeatRate = 0.6;
+    private int maxItemsPerInvoice = 4;
+    private int months = 12;
+
+    public DatasetGenerator(int productCount, int customerCount, int employeeCount, int invoiceCount, long seed) {
+        if (productCount <= 0 || customerCount <= 0 || employeeCount <= 0 || invoiceCount < 0) {
+            throw new IllegalArgumentException("So luong ban ghi khong hop le!");
+        }
+        this.productCount = productCount;
+        this.customerCount = customerCount;
+        this.employeeCount = employeeCount;
+        this.invoiceCount = invoiceCount;
+        this.seed = seed;
+    }
+
+    public void setZipfExponent(double zipfExponent) {
+        if (zipfExponent < 0) {
+            throw new IllegalArgumentException("So mu Zipf khong duoc am!");
+        }
+        this.zipfExponent = zipfExponent;
+    }
+
+    public void setRepeatRate(double repeatRate) {
+        if (repeatRate < 0 || repeatRate > 1) {
+            throw new IllegalArgumentException("Ti le khach quay lai phai trong khoang 0..1!");
+        }
+        this.repeatRate = repeatRate;
+    }
+
+    public void setMaxItemsPerInvoice(int maxItemsPerInvoice) {
+        if (maxItemsPerInvoice <= 0) {
+            throw new IllegalArgumentException("So san pham moi hoa don phai lon hon 0!");
+        }
+        this.maxItemsPerInvoice = maxItemsPerInvoice;
+    }
+
+    public void setMonths(int months) {
+        if (months <= 0) {
+            throw new IllegalArgumentException("So thang phai lon hon 0!");
+        }
+        this.months = months;
+    }
+
+    // Mã của phần tử thứ index (bắt đầu từ 1), dùng để benchmark tra cứu đúng mã đã sinh
+    public static String productId(int index) {
+        return (isComputer(index) ? "C" : "A") + String.format("%07d", index);
+    }
+
+    public static String customerId(int index) {
+        return String.format("KH%07d", index);
+    }
+
+    public static String employeeId(int index) {
+        return String.format("NV%04d", index);
+    }
+
+    public static String invoiceId(int index) {
+        return String.format("HD%09d", index);
+    }
+
+    private static boolean isComputer(int index) {
+        return index % 4 == 0;
+    }
+
+    public void writeTo(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        // Các file dẫn xuất của dữ liệu cũ không còn đúng với dữ liệu mới
+        for (String derived : new String[] {"products.dat", "invoices.idx", "invoices.stats", "invoices.txt.bak",
+                "stock.log", "stock.snap", "customers.txt.journal", "employees.txt.journal"}) {
+            Files.deleteIfExists(dir.resolve(derived));
+        }
+        // Phân vùng hóa đơn theo tháng được chia lại từ invoices.txt mới ở lần mở đầu tiên
+        Path partitions = dir.resolve(InvoicePartitions.DIRECTORY);
+        if (Files.isDirectory(partitions)) {
+            try (Stream<Path> files = Files.list(partitions)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+        }
+
+        Random random = new Random(seed);
+        List<Product> products = writeProducts(dir.resolve("products.txt"), random);
+        List<Customer> customers = writeCustomers(dir.resolve("customers.txt"), random);
+        List<Employee> employees = writeEmployees(dir.resolve("employees.txt"), random);
+        writeInvoices(dir.resolve("invoices.txt"), random, products, customers, employees);
+    }
+
+    private List<Product> writeProducts(Path path, Random random) throws IOException {
+        List<Product> products = new ArrayList<>(productCount);
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writeLine(out, FileHandler.formatHeader("products.txt"));
+            for (int i = 1; i <= productCount; i++) {
+                Product product;
+                if (isComputer(i)) {
+                    product = new Computer(productId(i), "Laptop " + i,
+                        (10_000 + random.nextInt(40_000)) * 1_000.0, 1_000_000,
+                        pick(CPUS, random), pick(RAMS, random), pick(DRIVES, random));
+                } else {
+                    String type = pick(ACCESSORY_TYPES, random);
+                    product = new Accessory(productId(i), type + " " + i,
+                        (50 + random.nextInt(2_000)) * 1_000.0, 1_000_000, type);
+                }
+                products.add(product);
+                writeLine(out, "----------------------------------------");
+                writeLine(out, product.getInfo());
+            }
+        }
+        return products;
+    }
+
+    private List<Customer> writeCustomers(Path path, Random random) throws IOException {
+        List<Customer> customers = new ArrayList<>(customerCount);
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writeLine(out, FileHandler.formatHeader("customers.txt"));
+            for (int i = 1; i <= customerCount; i++) {
+                Customer customer = new Customer(customerId(i),
+                    pick(FAMILY_NAMES, random) + " " + pick(GIVEN_NAMES, random),
+                    pick(CITIES, random), String.format("09%08d", i));
+                customers.add(customer);
+                writeLine(out, "----------------------------------------");
+                writeLine(out, customer.getInfo());
+            }
+        }
+        return customers;
+    }
+
+    private List<Employee> writeEmployees(Path path, Random random) throws IOException {
+        List<Employee> employees = new ArrayList<>(employeeCount);
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writeLine(out, FileHandler.formatHeader("employees.txt"));
+            for (int i = 1; i <= employeeCount; i++) {
+                Employee employee = new Employee(employeeId(i),
+                    pick(FAMILY_NAMES, random) + " " + pick(GIVEN_NAMES, random),
+                    String.format("08%08d", i), pick(CITIES, random), pick(POSITIONS, random),
+                    (8_000 + random.nextInt(30_000)) * 1_000.0);
+                employees.add(employee);
+                writeLine(out, "----------------------------------------");
+                writeLine(out, employee.getInfo());
+            }
+        }
+        return employees;
+    }
+
+    private void writeInvoices(Path path, Random random, List<Product> products,
+                               List<Customer> customers, List<Employee> employees) throws IOException {
+        ZipfSampler productSampler = new ZipfSampler(products.size(), zipfExponent, random);
+        // Khách đã từng mua, để chọn lại khi sinh khách quay lại
+        int[] buyers = new int[Math.max(1, invoiceCount)];
+        int buyerCount = 0;
+        boolean[] hasBought = new boolean[customers.size()];
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2024, Calendar.JANUARY, 1, 8, 0, 0);
+        long start = calendar.getTimeInMillis();
+        calendar.add(Calendar.MONTH, months);
+        long span = calendar.getTimeInMillis() - start;
+
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writeLine(out, "===== HOA DON BAN HANG =====");
+            for (int i = 1; i <= invoiceCount; i++) {
+                // Thời gian tăng dần theo thứ tự hóa đơn, giống file được ghi nối dần
+                long time = start + span * (i - 1) / Math.max(1, invoiceCount) + random.nextInt(60_000);
+                Invoice invoice = new Invoice(invoiceId(i), new Date(time));
+
+                int customer;
+                if (buyerCount > 0 && random.nextDouble() < repeatRate) {
+                    customer = buyers[random.nextInt(buyerCount)];
+                } else {
+                    customer = random.nextInt(customers.size());
+                    if (!hasBought[customer]) {
+                        hasBought[customer] = true;
+                        buyers[buyerCount++] = customer;
+                    }
+                }
+                invoice.setCustomer(customers.get(customer));
+                invoice.setEmployee(employees.get(random.nextInt(employees.size())));
+
+                int lines = 1 + random.nextInt(maxItemsPerInvoice);
+                for (int j = 0; j < lines; j++) {
+                    invoice.addItem(products.get(productSampler.next()), 1 + random.nextInt(3));
+                }
+
+                for (String line : FileHandler.formatInvoice(invoice)) {
+                    writeLine(out, line);
+                }
+            }
+        }
+    }
+
+    private static void writeLine(BufferedWriter out, String line) throws IOException {
+        out.write(line);
+        out.newLine();
+    }
+
+    private static String pick(String[] values, Random random) {
+        return values[random.nextInt(values.length)];
+    }
+
+    // Chọn chỉ số theo phân phối Zipf bằng tìm kiếm nhị phân trên hàm phân phối tích lũy.
+    // Hạng phổ biến được xáo trộn để sản phẩm bán chạy không dồn vào các mã nhỏ
+    private static class ZipfSampler {
+        private final double[] cumulative;
+        private final int[] rankToIndex;
+        private final Random random;
+
+        ZipfSampler(int size, double exponent, Random random) {
+            this.random = random;
+            this.cumulative = new double[size];
+            double sum = 0;
+            for (int rank = 0; rank < size; rank++) {
+                sum += 1.0 / Math.pow(rank + 1, exponent);
+                cumulative[rank] = sum;
+            }
+            for (int rank = 0; rank < size; rank++) {
+                cumulative[rank] /= sum;
+            }
+
+            this.rankToIndex = new int[size];
+            for (int i = 0; i < size; i++) {
+                rankToIndex[i] = i;
+            }
+            for (int i = size - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int temp = rankToIndex[i];
+                rankToIndex[i] = rankToIndex[j];
+                rankToIndex[j] = temp;
+            }
+        }
+
+        int next() {
+            int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+            if (rank < 0) {
+                rank = -rank - 1;
+            }
+            return rankToIndex[Math.min(rank, cumulative.length - 1)];
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String outDir = null;
+        int products = 1_000;
+        int customers = 1_000;
+        int employees = 20;
+        int invoices = 10_000;
+        long seed = 42;
+        Double zipf = null;
+        Double repeat = null;
+        Integer maxItems = null;
+        Integer months = null;
+
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Tham so khong hop le: " + arg);
+            }
+            String key = arg.substring(2, eq);
+            String value = arg.substring(eq + 1);
+            switch (key) {
+                case "out": outDir = value; break;
+                case "products": products = Integer.parseInt(value); break;
+                case "customers": customers = Integer.parseInt(value); break;
+                case "employees": employees = Integer.parseInt(value); break;
+                case "invoices": invoices = Integer.parseInt(value); break;
+                case "seed": seed = Long.parseLong(value); break;
+                case "zipf": zipf = Double.parseDouble(value); break;
+                case "repeat": repeat = Double.parseDouble(value); break;
+                case "max-items": maxItems = Integer.parseInt(value); break;
+                case "months": months = Integer.parseInt(value); break;
+                default:
+                    throw new IllegalArgumentException("Tham so khong hop le: " + arg);
+            }
+        }
+        if (outDir == null) {
+            throw new IllegalArgumentException("Can chi ro thu muc ket qua bang --out=...");
+        }
+
+        DatasetGenerator generator = new DatasetGenerator(products, customers, employees, invoices, seed);
+        if (zipf != null) generator.setZipfExponent(zipf);
+        if (repeat != null) generator.setRepeatRate(repeat);
+        if (maxItems != null) generator.setMaxItemsPerInvoice(maxItems);
+        if (months != null) generator.setMonths(months);
+
+        long startTime = System.nanoTime();
+        generator.writeTo(Paths.get(outDir));
+        System.out.printf("Da sinh %,d san pham, %,d khach hang, %,d nhan vien, %,d hoa don vao %s (%.1f s)%n",
+            products, customers, employees, invoices, outDir, (System.nanoTime() - startTime) / 1e9);
+    }
+}
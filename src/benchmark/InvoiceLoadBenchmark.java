@@ -0,0 +1,81 @@
+package benchmark;
+
+import models.Invoice;
+import services.CustomerService;
+import services.EmployeeService;
+import services.ProductService;
+import utils.InvoiceParser;
+import utils.ParallelInvoiceLoader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Supplier;
+
+// Đo chi phí tra cứu khách hàng/nhân viên/sản phẩm khi load hóa đơn:
+// tra qua từng service (có khóa) so với bảng tra cứu chụp một lần cho cả lượt load.
+// Chạy: java -cp out benchmark.InvoiceLoadBenchmark [soHoaDon] [soKhachHang] [soSanPham]
+public class InvoiceLoadBenchmark {
+    private static final int WARMUP = 2;
+    private static final int ITERATIONS = 5;
+
+    public static void main(String[] args) throws IOException {
+        int invoiceCount = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int customerCount = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int productCount = args.length > 2 ? Integer.parseInt(args[2]) : 2_000;
+
+        Path dir = Files.createTempDirectory("invoice-bench");
+        new DatasetGenerator(productCount, customerCount, 20, invoiceCount, 42).writeTo(dir);
+        System.setProperty("data.dir", dir.toString() + "/");
+
+        ProductService productService = new ProductService();
+        CustomerService customerService = new CustomerService();
+        EmployeeService employeeService = new EmployeeService();
+        Path invoices = dir.resolve("invoices.txt");
+
+        System.out.printf("%d hoa don, %d khach hang, %d san pham (%,d bytes)%n",
+            invoiceCount, customerCount, productCount, Files.size(invoices));
+
+        Supplier<InvoiceParser> perLookup = () -> new InvoiceParser(
+            id -> {
+                synchronized (customerService) {
+                    return customerService.findById(id);
+                }
+            },
+            id -> {
+                synchronized (employeeService) {
+                    return employeeService.findById(id);
+                }
+            },
+            id -> {
+                synchronized (productService) {
+                    return productService.findById(id);
+                }
+            });
+
+        measure("Tra cuu qua service", () -> new ParallelInvoiceLoader(perLookup).load(invoices));
+        measure("Chup bang tra cuu", () -> InvoiceParser.withLookupTables(
+            customerService, employeeService, productService));
+        measure("Bang tra cuu dung chung", () -> new ParallelInvoiceLoader(
+            InvoiceParser.withLookupTables(customerService, employeeService, productService)).load(invoices));
+    }
+
+    private interface Task {
+        Object run() throws IOException;
+    }
+
+    private static void measure(String name, Task task) throws IOException {
+        Object result = null;
+        for (int i = 0; i < WARMUP; i++) {
+            result = task.run();
+        }
+        long total = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            result = task.run();
+            total += System.nanoTime() - start;
+        }
+        String size = result instanceof List ? " (" + ((List<?>) result).size() + " hoa don)" : "";
+        System.out.printf("%-26s %10.2f ms/lan%s%n", name, total / 1e6 / ITERATIONS, size);
+    }
+}
@@ -0,0 +1,147 @@
+package benchmark;
+
+import models.Accessory;
+import models.Computer;
+import models.Customer;
+import models.Employee;
+import utils.RecordParser;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// So sánh tốc độ parse dòng sản phẩm/khách hàng/nhân viên: cách cũ (split + replace + Map)
+// với RecordParser đọc thẳng trên dòng. Các dòng được nạp sẵn vào bộ nhớ để chỉ đo phần parse.
+// Chạy: java -cp out benchmark.RecordParserBenchmark [soDong]
+public class RecordParserBenchmark {
+    private static final int WARMUP = 2;
+    private static final int ITERATIONS = 5;
+
+    public static void main(String[] args) throws IOException {
+        int lineCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        Path file = Files.createTempFile("records", ".txt");
+        writeLines(file, lineCount);
+        List<String> lines = new ArrayList<>(lineCount);
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        System.out.printf("%,d dong (%,d bytes)%n", lines.size(), Files.size(file));
+
+        measure("split + Map (cu)", lines, RecordParserBenchmark::parseLegacy);
+        RecordParser parser = new RecordParser();
+        measure("RecordParser", lines, line -> parseWith(parser, line));
+        Files.delete(file);
+    }
+
+    private interface LineParser {
+        Object parse(String line);
+    }
+
+    private static void measure(String name, List<String> lines, LineParser parser) {
+        int parsed = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            parsed = run(lines, parser);
+        }
+        long total = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            parsed = run(lines, parser);
+            total += System.nanoTime() - start;
+        }
+        double seconds = total / 1e9 / ITERATIONS;
+        System.out.printf("%-20s %10.2f ms/lan %,14.0f dong/giay (%,d doi tuong)%n",
+            name, seconds * 1000, lines.size() / seconds, parsed);
+    }
+
+    private static int run(List<String> lines, LineParser parser) {
+        int parsed = 0;
+        for (String line : lines) {
+            if (parser.parse(line) != null) {
+                parsed++;
+            }
+        }
+        return parsed;
+    }
+
+    private static Object parseWith(RecordParser parser, String line) {
+        if (line.startsWith("Computer [")) return parser.parseComputer(line);
+        if (line.startsWith("Accessory [")) return parser.parseAccessory(line);
+        if (line.startsWith("Customer [")) return parser.parseCustomer(line);
+        if (line.startsWith("Employee [")) return parser.parseEmployee(line);
+        return null;
+    }
+
+    // Cách parse trước đây của FileHandler, giữ lại làm mốc so sánh
+    private static Object parseLegacy(String line) {
+        Map<String, String> data = new LinkedHashMap<>();
+        String content = line.substring(line.indexOf("[") + 1, line.lastIndexOf("]"));
+        for (String pair : content.split(",(?=\\s*(?!Basic Salary:)[A-Za-z]+:)")) {
+            String[] keyValue = pair.split(":", 2);
+            if (keyValue.length == 2) {
+                data.put(keyValue[0].trim(), keyValue[1].trim());
+            }
+        }
+        if (line.startsWith("Computer [")) {
+            return new Computer(data.getOrDefault("ID", ""), data.getOrDefault("Name", ""),
+                Double.parseDouble(data.getOrDefault("Price", "0").replace(",", "")),
+                Integer.parseInt(data.getOrDefault("Quantity", "0")),
+                data.getOrDefault("CPU", ""), data.getOrDefault("RAM", ""), data.getOrDefault("Hard Drive", ""));
+        }
+        if (line.startsWith("Accessory [")) {
+            return new Accessory(data.getOrDefault("ID", ""), data.getOrDefault("Name", ""),
+                Double.parseDouble(data.getOrDefault("Price", "0").replace(",", "")),
+                Integer.parseInt(data.getOrDefault("Quantity", "0")), data.getOrDefault("Type", ""));
+        }
+        if (line.startsWith("Customer [")) {
+            return new Customer(data.getOrDefault("ID", ""), data.getOrDefault("Name", ""),
+                data.getOrDefault("Address", ""), data.getOrDefault("Phone", ""));
+        }
+        if (line.startsWith("Employee [")) {
+            return new Employee(data.getOrDefault("ID", ""), data.getOrDefault("Name", ""),
+                data.getOrDefault("Phone", ""), data.getOrDefault("Address", ""),
+                data.getOrDefault("Position", ""),
+                Double.parseDouble(data.getOrDefault("Basic Salary", "0").replace(",", "")));
+        }
+        return null;
+    }
+
+    private static void writeLines(Path file, int lineCount) throws IOException {
+        Random random = new Random(42);
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 1; i <= lineCount; i++) {
+                switch (random.nextInt(4)) {
+                    case 0:
+                        out.write(new Computer(String.format("C%07d", i), "Laptop " + i,
+                            10_000_000 + random.nextInt(50_000_000), random.nextInt(100),
+                            "Intel i7", "16GB", "512GB SSD").getInfo());
+                        break;
+                    case 1:
+                        out.write(new Accessory(String.format("A%07d", i), "Phu kien " + i,
+                            100_000 + random.nextInt(1_000_000), random.nextInt(1000), "Mouse").getInfo());
+                        break;
+                    case 2:
+                        out.write(new Customer(String.format("KH%07d", i), "Nguyen Van " + i,
+                            "12 Le Loi, Quan 1, TPHCM", String.format("09%08d", i)).getInfo());
+                        break;
+                    default:
+                        out.write(new Employee(String.format("NV%07d", i), "Tran Thi " + i,
+                            String.format("08%08d", i), "Ha Noi", "Sales",
+                            5_000_000 + random.nextInt(20_000_000)).getInfo());
+                        break;
+                }
+                out.newLine();
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package benchmark;
+
+import models.Invoice;
+import services.CustomerService;
+import services.EmployeeService;
+import services.InvoiceService;
+import services.ProductService;
+import utils.FileHandler;
+import utils.InvoiceParser;
+import utils.InvoicePartitions;
+import utils.ParallelInvoiceLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+// Đo các đường xử lý chính của service trên bộ dữ liệu sinh sẵn với nhiều kích thước.
+// Mỗi kích thước n gồm n khách hàng, n sản phẩm và n hóa đơn (20 nhân viên).
+// Chạy: java -Xmx4g -cp out benchmark.ServiceBenchmark [kichThuoc,...]   (mặc định 1000,100000,1000000)
+public class ServiceBenchmark {
+    public static void main(String[] args) throws Exception {
+        String sizes = args.length > 0 ? args[0] : "1000,100000,1000000";
+        BenchmarkHarness harness = new BenchmarkHarness();
+
+        for (String value : sizes.split(",")) {
+            int size = Integer.parseInt(value.trim());
+            Path dir = Files.createTempDirectory("service-bench");
+            new DatasetGenerator(size, size, 20, size, 42).writeTo(dir);
+            System.setProperty("data.dir", dir.toString() + "/");
+
+            System.out.printf("%n=== %,d ban ghi (%s) ===%n", size, dir);
+            harness.printHeader();
+            run(harness, dir, size);
+        }
+    }
+
+    private static void run(BenchmarkHarness harness, Path dir, int size) throws Exception {
+        Random random = new Random(42);
+
+        // Lần tạo đầu tiên chuyển products.txt sang products.dat và chia invoices.txt theo tháng,
+        // các lần sau đọc kho nhị phân và các phân vùng
+        ProductService productService = new ProductService();
+        CustomerService customerService = new CustomerService();
+        EmployeeService employeeService = new EmployeeService();
+        InvoiceService invoiceService = new InvoiceService(customerService, employeeService, productService);
+
+        // Mỗi lần đo tạo service mới rồi đóng ngay, không để ghi trễ và theo dõi file dồn lại
+        harness.measure("customer.loadItems", () -> {
+            try (CustomerService service = new CustomerService()) {
+                return service.getAllItems();
+            }
+        });
+        harness.measure("product.loadItems", () -> {
+            try (ProductService service = new ProductService()) {
+                return service;
+            }
+        });
+        InvoicePartitions partitions = new InvoicePartitions(dir);
+        harness.measure("invoice.loadItems", () -> partitions.loadAll(new ParallelInvoiceLoader(
+            InvoiceParser.withLookupTables(customerService, employeeService, productService))));
+
+        harness.measure("customer.findById", () ->
+            customerService.findById(DatasetGenerator.customerId(1 + random.nextInt(size))));
+        harness.measure("product.findById", () ->
+            productService.findById(DatasetGenerator.productId(1 + random.nextInt(size))));
+        harness.measure("invoice.findById", () ->
+            invoiceService.findById(DatasetGenerator.invoiceId(1 + random.nextInt(size))));
+
+        harness.measure("product.searchProducts", () ->
+            productService.searchProducts(DatasetGenerator.productId(1 + random.nextInt(size)).toLowerCase()));
+
+        // Bán rồi trả lại một sản phẩm để tồn kho không cạn sau nhiều lần gọi
+        int[] calls = {0};
+        harness.measure("product.updateProductQuantity", () -> {
+            String id = DatasetGenerator.productId(1 + random.nextInt(size));
+            return productService.updateProductQuantity(id, (calls[0]++ & 1) == 0 ? 1 : -1);
+        });
+
+        // Ghi vào file riêng để không làm thay đổi invoices.txt của các phép đo khác
+        FileHandler<Invoice> fileHandler = new FileHandler<>();
+        Invoice sample = new Invoice("HDBENCH", new Date());
+        sample.setCustomer(customerService.findById(DatasetGenerator.customerId(1)).orElseThrow());
+        sample.setEmployee(employeeService.findById(DatasetGenerator.employeeId(1)).orElseThrow());
+        sample.addItem(productService.findById(DatasetGenerator.productId(1)).orElseThrow(), 1);
+        // Chờ tới khi hóa đơn đã xuống đĩa, để đo cả lần fsync chứ không chỉ thời gian xếp hàng
+        harness.measure("fileHandler.saveInvoiceToText", () -> {
+            fileHandler.saveInvoiceToText(sample, "bench-invoices.txt").join();
+            return sample;
+        });
+        // 16 quầy cùng gửi hóa đơn: luồng ghi gộp thành ít lần fsync
+        harness.measure("fileHandler.saveInvoiceToText x16", () -> {
+            List<CompletableFuture<Void>> writes = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                writes.add(fileHandler.saveInvoiceToText(sample, "bench-invoices.txt"));
+            }
+            writes.forEach(CompletableFuture::join);
+            return sample;
+        });
+
+        harness.measure("invoice.displayInvoiceStatistics", () -> {
+            invoiceService.displayInvoiceStatistics();
+            return invoiceService;
+        });
+    }
+}
@@ -1,5 +1,7 @@
 package interfaces;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 public interface SystemInterfaces {
@@ -20,4 +22,12 @@ public interface SystemInterfaces {
         String getInfo();
         void display();
     }
+
+    // Interface cho nguồn dữ liệu đọc theo vị trí byte (file văn bản hoặc bản lưu trữ nén)
+    interface ByteSource {
+        // Số byte dữ liệu, 0 nếu chưa có dữ liệu
+        long size() throws IOException;
+        InputStream openFrom(long offset) throws IOException;
+        byte[] read(long offset, int length) throws IOException;
+    }
 } 
\ No newline at end of file
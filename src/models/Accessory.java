@@ -14,7 +14,7 @@ public class Accessory extends Product {
     @Override
     public String getInfo() {
         return String.format("Accessory [ID: %s, Name: %s, Price: %,.0f, Quantity: %d, Type: %s]",
-                           getId(), getName(), getPrice(), getQuantity(), type);
+                           getId(), RecordFormat.quote(getName()), getPrice(), getQuantity(), RecordFormat.quote(type));
     }
 
    
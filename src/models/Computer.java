@@ -34,10 +34,10 @@ public class Computer extends Product {
 
         return String.format("Computer [ID: %s, Name: %s, Price: %,.0f, Quantity: %d, " +
                            "CPU: %s, RAM: %s, Hard Drive: %s]",
-                           getId(), getName(), getPrice(), getQuantity(), 
-                           cpu, 
-                           ram.contains("GB") ? ram : ram + "GB", 
-                           formattedHardDrive);
+                           getId(), RecordFormat.quote(getName()), getPrice(), getQuantity(), 
+                           RecordFormat.quote(cpu), 
+                           RecordFormat.quote(ram.contains("GB") ? ram : ram + "GB"), 
+                           RecordFormat.quote(formattedHardDrive));
     }
 
     @Override
@@ -53,10 +53,10 @@ public class Computer extends Product {
 
         System.out.printf("Computer [ID: %s, Name: %s, Price: %,.0f, Quantity: %d, " +
                    "CPU: %s, RAM: %s, Hard Drive: %s]%n",
-                   getId(), getName(), getPrice(), getQuantity(), 
-                   cpu, 
-                   ram.contains("GB") ? ram : ram + "GB", 
-                   formattedHardDrive);
+                   getId(), RecordFormat.quote(getName()), getPrice(), getQuantity(), 
+                   RecordFormat.quote(cpu), 
+                   RecordFormat.quote(ram.contains("GB") ? ram : ram + "GB"), 
+                   RecordFormat.quote(formattedHardDrive));
     }
 
 } 
\ No newline at end of file
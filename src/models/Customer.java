@@ -39,7 +39,7 @@ public class Customer implements Identifiable, Printable, Serializable {
         }
         
         return String.format("Customer [ID: %s, Name: %s, Address: %s, Phone: %s]",
-                           id, name, displayAddress, displayPhone);
+                           id, RecordFormat.quote(name), RecordFormat.quote(displayAddress), displayPhone);
     }
 
     @Override
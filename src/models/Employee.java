@@ -42,10 +42,10 @@ public class Employee implements Identifiable, Printable, Serializable {
     public String getInfo() {
         if (basicSalary > 0) {
             return String.format("Employee [ID: %s, Name: %s, Phone: %s, Address: %s, Position: %s, Basic Salary: %,.0f]",
-                id, name, phone, address, position, basicSalary);
+                id, RecordFormat.quote(name), phone, RecordFormat.quote(address), RecordFormat.quote(position), basicSalary);
         } else {
             return String.format("Employee [ID: %s, Name: %s, Phone: %s, Address: %s, Position: %s]",
-                id, name, phone, address, position);
+                id, RecordFormat.quote(name), phone, RecordFormat.quote(address), RecordFormat.quote(position));
         }
     }
 
@@ -53,10 +53,10 @@ public class Employee implements Identifiable, Printable, Serializable {
     public void display() {
         if (basicSalary > 0) {
             System.out.printf("Employee [ID: %s, Name: %s, Phone: %s, Address: %s, Position: %s, Basic Salary: %,.0f]%n",
-                id, name, phone, address, position, basicSalary);
+                id, RecordFormat.quote(name), phone, RecordFormat.quote(address), RecordFormat.quote(position), basicSalary);
         } else {
             System.out.printf("Employee [ID: %s, Name: %s, Phone: %s, Address: %s, Position: %s]%n",
-                id, name, phone, address, position);
+                id, RecordFormat.quote(name), phone, RecordFormat.quote(address), RecordFormat.quote(position));
         }
     }
 } 
\ No newline at end of file
@@ -0,0 +1,25 @@
+package models;
+
+// Định dạng ghi một trường của dòng "Loai [ID: ..., Name: ..., ...]" trong các file văn bản;
+// utils.RecordCursor đọc lại đúng định dạng này.
+public final class RecordFormat {
+    private RecordFormat() {
+    }
+
+    // Bọc nháy giá trị tự do (tên, địa chỉ...) khi nó có thể làm lệch việc tách trường,
+    // bên trong dùng \" và \\ để thoát ký tự
+    public static String quote(String value) {
+        if (value == null || (value.indexOf(',') < 0 && !value.startsWith("\""))) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        return sb.append('"').toString();
+    }
+}
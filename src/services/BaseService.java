@@ -1,28 +1,216 @@
 package services;
 
+import interfaces.SystemInterfaces.Identifiable;
+import utils.DataWatcher;
 import utils.FileHandler;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.io.IOException;
 
-public abstract class BaseService<T> {
+public abstract class BaseService<T extends Identifiable> implements AutoCloseable {
     protected FileHandler<T> fileHandler;
     protected List<T> items;
     protected final String filename;
     protected Scanner scanner;
+    // Bảng tra cứu theo ID, luôn đồng bộ với items; đọc không cần khóa từ nhiều luồng bán hàng
+    protected final Map<String, T> itemIndex = new ConcurrentHashMap<>();
+    // Dấu thời gian và kích thước file ở lần load/ghi gần nhất
+    private volatile long loadedModified = -1;
+    private volatile long loadedSize = -1;
+    // Số thế hệ của file (tăng mỗi lần một tiến trình bất kỳ ghi file), chính xác hơn thời gian sửa
+    private volatile long loadedGeneration = -1;
+    // Số lần ghi của chính service còn nằm trong hàng đợi ghi; khi còn thì dữ liệu trong bộ nhớ mới hơn file
+    private final AtomicInteger pendingWrites = new AtomicInteger();
+    // Số lần ghi của chính service từ lần đánh dấu trước, để biết số thế hệ tăng thêm bao nhiêu là do mình
+    private final AtomicInteger ownWrites = new AtomicInteger();
+    // Báo khi file thật sự đổi, để phần lớn các lần đọc không phải hỏi thuộc tính file
+    private final DataWatcher.Watch watch;
+    // Số lần đã load, để luồng chờ khóa load biết luồng khác vừa load xong
+    private volatile int loadCount = 0;
+    private final Lock loadLock = new ReentrantLock();
 
     protected BaseService(String filename) {
         this.filename = filename;
         this.fileHandler = new FileHandler<>();
         this.scanner = new Scanner(System.in);
+        this.watch = DataWatcher.shared().watch(Paths.get(fileHandler.getDirectory() + filename));
     }
 
     // Các phương thức CRUD cơ bản
     protected abstract void loadItems();
-    public abstract Optional<T> findById(String id);
     protected abstract void validateInput(String id, String name);
 
+    public Optional<T> findById(String id) {
+        ensureLoaded();
+        return id == null ? Optional.empty() : Optional.ofNullable(itemIndex.get(id));
+    }
+
+    // Chỉ đọc lại file khi file đã bị thay đổi từ bên ngoài kể từ lần load gần nhất.
+    // Chỉ một luồng load tại một thời điểm; luồng khác vẫn tra itemIndex trong lúc đó
+    protected void ensureLoaded() {
+        int seenLoads = loadCount;
+        if (items != null && !isFileChanged()) {
+            return;
+        }
+        withLoadLock(() -> {
+            if (loadCount != seenLoads) {
+                return;
+            }
+            // Lấy số thế hệ trước khi đọc: tiến trình khác ghi trong lúc đang đọc thì lần sau sẽ đọc lại
+            long generation = fileHandler.getGeneration(filename);
+            loadItems();
+            synchronized (this) {
+                if (items == null) {
+                    items = new ArrayList<>();
+                }
+                Map<String, T> loaded = new HashMap<>();
+                for (T item : items) {
+                    // Giữ phần tử đầu tiên nếu trùng ID, giống như tìm kiếm tuần tự trước đây
+                    if (item.getId() != null) {
+                        loaded.putIfAbsent(item.getId(), item);
+                    }
+                }
+                // Không xóa trắng rồi điền lại: luồng đang tra cứu luôn thấy bản cũ hoặc bản mới của từng ID
+                itemIndex.keySet().retainAll(loaded.keySet());
+                itemIndex.putAll(loaded);
+            }
+            markPersisted();
+            loadedGeneration = generation;
+            loadCount++;
+        });
+    }
+
+    // Chạy load dưới khóa load; service có khóa file riêng thì dùng khóa đó để không khóa chéo
+    protected void withLoadLock(Runnable load) {
+        loadLock.lock();
+        try {
+            load.run();
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    protected boolean isFileChanged() {
+        if (pendingWrites.get() > 0) {
+            return false;
+        }
+        if (!watch.needsCheck()) {
+            return false;
+        }
+        watch.checked();
+        // Số thế hệ bắt được mọi lần ghi qua FileHandler của mọi tiến trình; thời gian sửa và kích thước
+        // vẫn được so để nhận ra file bị sửa tay
+        boolean changed = fileHandler.getGeneration(filename) != loadedGeneration
+            || fileHandler.getLastModified(filename) != loadedModified
+            || fileHandler.getFileSize(filename) != loadedSize;
+        if (changed) {
+            // Nơi gọi có thể không load lại ngay (ví dụ chỉ đọc một bản ghi): lần sau vẫn phải so lại
+            watch.markStale();
+        }
+        return changed;
+    }
+
+    // Như ensureLoaded nhưng luôn so file thật, không dựa vào sự kiện theo dõi (có thể đến trễ).
+    // Dùng trong đoạn đọc - tính - ghi đang giữ khóa ghi của file
+    protected void ensureLoadedFromFile() {
+        watch.markStale();
+        ensureLoaded();
+    }
+
+    // Gọi sau mỗi lần service tự ghi file để không phải load lại chính dữ liệu vừa ghi
+    // Chỉ nhận số thế hệ mới khi nó không tăng quá số lần tự ghi; tăng nhiều hơn là đã có tiến trình khác
+    // ghi xen vào, giữ số cũ để lần kiểm tra sau đọc lại file (đọc lại thừa thì vô hại, bỏ sót thì không)
+    protected void markPersisted() {
+        int writes = Math.max(1, ownWrites.getAndSet(0));
+        long current = fileHandler.getGeneration(filename);
+        if (loadedGeneration < 0 || current - loadedGeneration <= writes) {
+            loadedGeneration = current;
+        }
+        loadedModified = fileHandler.getLastModified(filename);
+        loadedSize = fileHandler.getFileSize(filename);
+    }
+
+    // Dùng thay markPersisted cho các lần ghi qua hàng đợi: chỉ đánh dấu đã lưu khi lần ghi cuối cùng
+    // xong, và trong lúc chờ không load lại file cũ đè lên dữ liệu vừa sửa trong bộ nhớ
+    protected void markPersistedWhenDone(CompletableFuture<Void> write) {
+        pendingWrites.incrementAndGet();
+        ownWrites.incrementAndGet();
+        write.whenComplete((result, error) -> {
+            if (pendingWrites.decrementAndGet() == 0) {
+                markPersisted();
+            }
+        });
+    }
+
+    // Bản sao bất biến của bảng tra cứu, đọc an toàn từ nhiều luồng
+    public Map<String, T> snapshotIndex() {
+        ensureLoaded();
+        return Map.copyOf(itemIndex);
+    }
+
+    // Ghép danh sách vừa đọc lại từ file với dữ liệu đang có: phần tử không đổi (cùng chữ ký) giữ nguyên
+    // đối tượng cũ, chỉ phần tử mới/đổi được báo qua changed và phần tử biến mất qua removed, để service
+    // chỉ cập nhật chỉ mục cho đúng phần đó thay vì dựng lại toàn bộ khi tiến trình khác sửa vài dòng
+    protected List<T> mergeReloaded(List<T> loaded, Function<T, String> signature,
+                                    Consumer<T> changed, Consumer<String> removed) {
+        List<T> merged = new ArrayList<>(loaded.size());
+        Set<String> seen = new HashSet<>();
+        for (T item : loaded) {
+            T old = itemIndex.get(item.getId());
+            if (old != null && signature.apply(old).equals(signature.apply(item))) {
+                merged.add(old);
+            } else {
+                merged.add(item);
+                changed.accept(item);
+            }
+            seen.add(item.getId());
+        }
+        for (String id : itemIndex.keySet()) {
+            if (!seen.contains(id)) {
+                removed.accept(id);
+            }
+        }
+        return merged;
+    }
+
+    // Bản sao danh sách để ghi file từ luồng khác (ghi trễ) trong khi items vẫn có thể bị sửa
+    protected synchronized List<T> snapshotItems() {
+        return new ArrayList<>(items);
+    }
+
+    // Thêm mới hoặc thay thế phần tử có cùng ID trong cả items và itemIndex
+    protected synchronized void putItem(T item) {
+        T existing = itemIndex.put(item.getId(), item);
+        if (existing != null) {
+            for (int i = 0; i < items.size(); i++) {
+                if (items.get(i) == existing) {
+                    items.set(i, item);
+                    return;
+                }
+            }
+        }
+        items.add(item);
+    }
+
+    protected synchronized void removeItem(String id) {
+        itemIndex.remove(id);
+        items.removeIf(item -> item.getId().equals(id));
+    }
+
     // Các phương thức tiện ích xử lý đầu vào
     protected String getStringInput(String prompt) {
         System.out.print(prompt);
@@ -54,24 +242,25 @@ public abstract class BaseService<T> {
     // Phương thức hiển thị
     public void displayFromFile() {
         try {
-            List<String> lines = fileHandler.readAllLines(filename);
-            if (lines.isEmpty()) {
+            if (fileHandler.getFileSize(filename) <= 0) {
                 System.out.println("Danh sach trong!");
                 return;
             }
 
-            for (String line : lines) {
+            fileHandler.forEachLine(filename, line -> {
                 if (!line.startsWith("=====") && !line.startsWith("----")) {
                     System.out.println(line);
                     System.out.println("----------------------------------------");
                 }
-            }
+                return true;
+            });
         } catch (IOException e) {
             System.err.println("Loi khi doc file: " + e.getMessage());
         }
     }
 
     public void close() {
+        watch.close();
         if (scanner != null) {
             scanner.close();
         }
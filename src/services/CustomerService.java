@@ -1,38 +1,61 @@
 package services;
 
 import models.Customer;
+import utils.CustomerSearchIndex;
+import utils.PhoneIndex;
+import utils.RecordParser;
+import utils.TextNormalizer;
+import utils.WriteBehind;
 //import utils.FileHandler;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-//import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.io.IOException;
 //import java.nio.file.Files;
 //import java.nio.file.Path;
-//import java.nio.file.Paths;
+import java.nio.file.Paths;
 //import java.nio.charset.StandardCharsets;
 //import java.util.Scanner;
 import java.util.stream.Collectors;
 
 public class CustomerService extends BaseService<Customer> {
+    // Chỉ mục tìm kiếm theo mã, tên, địa chỉ và số điện thoại, đồng bộ với items
+    private final CustomerSearchIndex searchIndex = new CustomerSearchIndex();
+    // Cây số điện thoại để nhận diện khách hàng tại quầy
+    private final PhoneIndex phoneIndex = new PhoneIndex();
+    // Sửa/xóa chỉ ghi nhật ký, customers.txt được ghi lại một lần cho cả loạt thay đổi
+    private final WriteBehind<Customer> writeBehind = new WriteBehind<>(
+        Paths.get(fileHandler.getDirectory() + filename + ".journal"),
+        new RecordParser()::parseCustomer, this::writeFile);
+
     public CustomerService() {
         super("customers.txt");
         fixCustomerData();
     }
     
     @Override
-    protected void loadItems() {
-        items = fileHandler.loadFromFile(filename);
-        if (items == null) {
-            items = new ArrayList<>();
+    public void close() {
+        try {
+            writeBehind.close();
+        } catch (IOException e) {
+            System.err.println("Loi khi ghi tre du lieu: " + e.getMessage());
         }
+        super.close();
     }
 
     @Override
-    public Optional<Customer> findById(String id) {
-        loadItems();
-        return items.stream()
-            .filter(c -> c.getId().equals(id))
-            .findFirst();
+    protected void loadItems() {
+        // Thay đổi đã ghi nhật ký nhưng chưa kịp ghi vào file (ví dụ chương trình bị tắt đột ngột)
+        List<Customer> loaded = writeBehind.replay(fileHandler.loadFromFile(filename));
+        // Chỉ đánh chỉ mục lại các khách hàng mới hoặc đã đổi so với lần load trước
+        items = mergeReloaded(loaded, Customer::getInfo, customer -> {
+            searchIndex.put(customer);
+            phoneIndex.put(customer.getId(), customer.getPhone());
+        }, id -> {
+            searchIndex.remove(id);
+            phoneIndex.remove(id);
+        });
     }
 
     @Override
@@ -50,14 +73,7 @@ public class CustomerService extends BaseService<Customer> {
 
     public void searchItems() {
         String keyword = getStringInput("Nhap tu khoa tim kiem: ");
-        loadItems(); // Đảm bảo load dữ liệu mới nhất
-        
-        List<Customer> results = items.stream()
-            .filter(c -> c.getId().toLowerCase().contains(keyword.toLowerCase()) ||
-                        c.getName().toLowerCase().contains(keyword.toLowerCase()) ||
-                        c.getPhone().contains(keyword) ||
-                        c.getAddress().toLowerCase().contains(keyword.toLowerCase()))
-            .collect(Collectors.toList());
+        List<Customer> results = search(keyword);
         
         if (results.isEmpty()) {
             System.out.println("Khong tim thay khach hang nao!");
@@ -68,14 +84,63 @@ public class CustomerService extends BaseService<Customer> {
         results.forEach(Customer::display);
     }
 
+    // Tìm theo mã, tên, địa chỉ hoặc số điện thoại; gõ không dấu vẫn khớp tên có dấu
+    public List<Customer> search(String keyword) {
+        ensureLoaded(); // Đảm bảo load dữ liệu mới nhất
+        return toCustomers(searchIndex.search(keyword));
+    }
+
+    // Như search nhưng chỉ lấy khách hàng có một trường bắt đầu bằng từ khóa (gợi ý khi đang gõ)
+    public List<Customer> searchByPrefix(String keyword) {
+        ensureLoaded();
+        return toCustomers(searchIndex.searchPrefix(keyword));
+    }
+
+    // Khách hàng có đúng số điện thoại này (chấp nhận dạng có dấu cách, gạch nối, +84)
+    public List<Customer> findByPhone(String phone) {
+        ensureLoaded();
+        return toCustomers(phoneIndex.findExact(phone));
+    }
+
+    // Gợi ý khách hàng theo các chữ số đầu của số điện thoại
+    public List<Customer> findByPhonePrefix(String prefix, int limit) {
+        ensureLoaded();
+        return toCustomers(phoneIndex.findByPrefix(prefix, limit));
+    }
+
     public List<Customer> findByName(String name) {
-        loadItems();
-        String searchName = name.toLowerCase().trim();
-        return items.stream()
-            .filter(c -> c.getName().toLowerCase().contains(searchName))
+        String searchName = TextNormalizer.fold(name.trim());
+        // Chỉ mục phủ nhiều trường nên lọc lại theo tên
+        return search(name).stream()
+            .filter(c -> TextNormalizer.fold(c.getName()).contains(searchName))
             .collect(Collectors.toList());
     }
 
+    private List<Customer> toCustomers(List<String> ids) {
+        List<Customer> customers = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Customer customer = itemIndex.get(id);
+            if (customer != null) {
+                customers.add(customer);
+            }
+        }
+        return customers;
+    }
+
+    @Override
+    protected void putItem(Customer customer) {
+        super.putItem(customer);
+        searchIndex.put(customer);
+        phoneIndex.put(customer.getId(), customer.getPhone());
+    }
+
+    @Override
+    protected void removeItem(String id) {
+        super.removeItem(id);
+        searchIndex.remove(id);
+        phoneIndex.remove(id);
+    }
+
     public void updateCustomerDetails(String id, String name, String address, String phone) {
         Optional<Customer> customerOpt = findById(id);
         if (customerOpt.isEmpty()) {
@@ -84,6 +149,11 @@ public class CustomerService extends BaseService<Customer> {
 
         Customer customer = customerOpt.get();
 
+        // Kiểm tra trước khi sửa vì customer là đối tượng dùng chung trong bộ nhớ đệm
+        if (phone != null && !phone.trim().isEmpty() && !phone.matches("\\d{10,11}")) {
+            throw new IllegalArgumentException("So dien thoai khong hop le (can 10-11 so)!");
+        }
+
         // Cập nhật từng trường thông tin nếu có
         if (name != null && !name.trim().isEmpty()) {
             customer.setName(name);
@@ -92,9 +162,6 @@ public class CustomerService extends BaseService<Customer> {
             customer.setAddress(address);
         }
         if (phone != null && !phone.trim().isEmpty()) {
-            if (!phone.matches("\\d{10,11}")) {
-                throw new IllegalArgumentException("So dien thoai khong hop le (can 10-11 so)!");
-            }
             customer.setPhone(phone);
         }
 
@@ -104,26 +171,11 @@ public class CustomerService extends BaseService<Customer> {
     public void updateCustomer(Customer customer) {
         if (customer == null) return;
         
-        loadItems(); // Load lại danh sách trước khi cập nhật
-        
-        // Tìm và cập nhật khách hàng trong danh sách
-        boolean found = false;
-        for (int i = 0; i < items.size(); i++) {
-            if (items.get(i).getId().equals(customer.getId())) {
-                items.set(i, customer);
-                found = true;
-                break;
-            }
-        }
-        
-        if (!found) {
+        if (findById(customer.getId()).isEmpty()) {
             throw new IllegalArgumentException("Khong tim thay khach hang!");
         }
-        
-        // Đánh dấu là đang cập nhật toàn bộ file
-        fileHandler.setUpdatingFile(true);
-        fileHandler.saveToFile(filename, items);
-        fileHandler.setUpdatingFile(false);
+        putItem(customer);
+        writeBehind.put(customer);
         
         System.out.println("Cap nhat khach hang thanh cong!");
     }
@@ -134,21 +186,11 @@ public class CustomerService extends BaseService<Customer> {
             throw new IllegalArgumentException("Khong tim thay khach hang!");
         }
 
-        // Load lại danh sách mới nhất
-        loadItems();
-        
         // Xóa khách hàng khỏi danh sách
-        boolean removed = items.removeIf(c -> c.getId().equals(id));
-        
-        if (!removed) {
-            throw new IllegalArgumentException("Xoa khach hang that bai!");
-        }
+        removeItem(id);
         
         try {
-            // Ghi đè toàn bộ file với danh sách mới
-            fileHandler.setUpdatingFile(true);
-            fileHandler.saveToFile(filename, items);
-            fileHandler.setUpdatingFile(false);
+            writeBehind.remove(id);
             
             System.out.println("Xoa khach hang thanh cong!");
         } catch (Exception e) {
@@ -165,19 +207,18 @@ public class CustomerService extends BaseService<Customer> {
             throw new IllegalArgumentException("So dien thoai khong hop le (can 10-11 so)!");
         }
         
-        loadItems();
-        items.add(customer);
-        fileHandler.saveToFile(filename, List.of(customer));
+        putItem(customer);
+        markPersistedWhenDone(fileHandler.appendToFile(filename, List.of(customer)));
         System.out.println("Them khach hang thanh cong!");
     }
 
     public List<Customer> getAllItems() {
-        loadItems();
+        ensureLoaded();
         return new ArrayList<>(items);
     }
 
     public void fixCustomerData() {
-        loadItems();
+        ensureLoaded();
         boolean needsUpdate = false;
         
         for (Customer customer : items) {
@@ -189,16 +230,22 @@ public class CustomerService extends BaseService<Customer> {
                 phone.matches(".*[a-zA-Z].*") && address.matches("\\d+")) {
                 customer.setPhone(address);
                 customer.setAddress(phone);
+                searchIndex.put(customer);
+                phoneIndex.put(customer.getId(), customer.getPhone());
+                writeBehind.put(customer);
                 needsUpdate = true;
             }
         }
         
         if (needsUpdate) {
-            // Cập nhật lại file
-            fileHandler.setUpdatingFile(true);
-            fileHandler.saveToFile(filename, items);
-            fileHandler.setUpdatingFile(false);
             System.out.println("Da sua lai thong tin khach hang!");
         }
     }
+
+    // Ghi lại toàn bộ customers.txt từ bộ nhớ, do WriteBehind gọi
+    private CompletableFuture<Void> writeFile() {
+        CompletableFuture<Void> write = fileHandler.replaceFile(filename, snapshotItems());
+        markPersistedWhenDone(write);
+        return write;
+    }
 } 
\ No newline at end of file
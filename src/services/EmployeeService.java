@@ -3,35 +3,41 @@ package services;
 import models.Employee;
 //import models.Invoice;
 //import utils.FileHandler;
-import java.util.ArrayList;
+import utils.RecordParser;
+import utils.WriteBehind;
+import java.io.IOException;
 import java.util.List;
 import java.util.Optional;
-import java.io.IOException;
-import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
 //import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.stream.Collectors;
 //import java.text.SimpleDateFormat;
 
 public class EmployeeService extends BaseService<Employee> {
+    // Sửa/xóa chỉ ghi nhật ký, employees.txt được ghi lại một lần cho cả loạt thay đổi
+    private final WriteBehind<Employee> writeBehind = new WriteBehind<>(
+        Paths.get(fileHandler.getDirectory() + filename + ".journal"),
+        new RecordParser()::parseEmployee, this::writeFile);
+
     public EmployeeService() {
         super("employees.txt");
     }
 
     @Override
-    protected void loadItems() {
-        items = fileHandler.loadFromFile(filename);
-        if (items == null) {
-            items = new ArrayList<>();
+    public void close() {
+        try {
+            writeBehind.close();
+        } catch (IOException e) {
+            System.err.println("Loi khi ghi tre du lieu: " + e.getMessage());
         }
+        super.close();
     }
 
     @Override
-    public Optional<Employee> findById(String id) {
-        loadItems();
-        return items.stream()
-            .filter(e -> e.getId().equals(id))
-            .findFirst();
+    protected void loadItems() {
+        // Thay đổi đã ghi nhật ký nhưng chưa kịp ghi vào file (ví dụ chương trình bị tắt đột ngột)
+        items = writeBehind.replay(fileHandler.loadFromFile(filename));
     }
 
     @Override
@@ -62,12 +68,10 @@ public class EmployeeService extends BaseService<Employee> {
         }
         
         Employee employee = new Employee(id, name, phone, address, position, basicSalary);
-        loadItems(); // Load danh sách hiện tại
-        items.add(employee);
+        putItem(employee);
         
         // Chỉ lưu nhân viên mới vào cuối file
-        fileHandler.setUpdatingFile(false); // Đảm bảo chế độ append
-        fileHandler.saveToFile(filename, List.of(employee));
+        markPersistedWhenDone(fileHandler.appendToFile(filename, List.of(employee)));
         
         System.out.println("Them nhan vien thanh cong!");
     }
@@ -90,13 +94,9 @@ public class EmployeeService extends BaseService<Employee> {
     }
 
     public void searchEmployees() {
-        loadItems();
+        ensureLoaded();
         String keyword = getStringInput("Nhap tu khoa tim kiem: ");
         
-        if (items == null) {
-            items = new ArrayList<>();
-        }
-        
         List<Employee> results = items.stream()
             .filter(e -> e.getName().toLowerCase().contains(keyword.toLowerCase()))
             .collect(Collectors.toList());
@@ -136,36 +136,9 @@ public class EmployeeService extends BaseService<Employee> {
         // Giữ nguyên basic salary
         employee.setBasicSalary(currentBasicSalary);
 
-        try {
-            List<String> lines = fileHandler.readAllLines(filename);
-            List<String> newLines = new ArrayList<>();
-            boolean found = false;
-
-            for (String line : lines) {
-                if (line.contains("ID: " + id)) {
-                    // Thay thế dòng cũ bằng thông tin mới của nhân viên
-                    newLines.add(employee.getInfo());
-                    found = true;
-                } else {
-                    newLines.add(line);
-                }
-            }
-
-            if (!found) {
-                throw new IllegalArgumentException("Khong tim thay nhan vien trong file!");
-            }
-
-            // Ghi lại file với nội dung đã cập nhật
-            Files.write(Paths.get(fileHandler.getDirectory() + filename), newLines);
-            
-            // Cập nhật trong danh sách items
-            loadItems();
-            
-            System.out.println("Cap nhat nhan vien thanh cong!");
-        } catch (IOException e) {
-            System.err.println("Loi khi cap nhat nhan vien: " + e.getMessage());
-            throw new RuntimeException("Cap nhat nhan vien that bai!", e);
-        }
+        // employee là đối tượng trong bộ nhớ đệm nên đã được cập nhật sẵn, chỉ cần ghi nhật ký
+        writeBehind.put(employee);
+        System.out.println("Cap nhat nhan vien thanh cong!");
     }
 
     public void deleteEmployeeById(String id) {
@@ -174,51 +147,15 @@ public class EmployeeService extends BaseService<Employee> {
             throw new IllegalArgumentException("Khong tim thay nhan vien!");
         }
 
-        try {
-            List<String> lines = fileHandler.readAllLines(filename);
-            List<String> newLines = new ArrayList<>();
-            boolean skipEmployee = false;
-
-            for (String line : lines) {
-                // Nếu là header hoặc dòng phân cách, thêm vào bình thường
-                if (line.startsWith("=====") || line.isEmpty()) {
-                    newLines.add(line);
-                    continue;
-                }
-                
-                // Nếu là dòng phân cách và đang skip nhân viên, bỏ qua
-                if (line.startsWith("----")) {
-                    if (!skipEmployee) {
-                        newLines.add(line);
-                    }
-                    skipEmployee = false;
-                    continue;
-                }
-
-                // Nếu tìm thấy nhân viên cần xóa, bắt đầu skip
-                if (line.contains("ID: " + id)) {
-                    skipEmployee = true;
-                    continue;
-                }
-
-                // Nếu không phải dòng cần skip, thêm vào danh sách mới
-                if (!skipEmployee) {
-                    newLines.add(line);
-                }
-            }
-
-            // Ghi lại file với nội dung mới
-            Files.write(Paths.get(fileHandler.getDirectory() + filename), newLines);
-            
-            // Cập nhật danh sách items
-            loadItems();
-            
-            System.out.println("Xoa nhan vien thanh cong!");
-        } catch (IOException e) {
-            System.err.println("Loi khi xoa nhan vien: " + e.getMessage());
-            throw new RuntimeException("Xoa nhan vien that bai!", e);
-        }
+        removeItem(id);
+        writeBehind.remove(id);
+        System.out.println("Xoa nhan vien thanh cong!");
     }
 
-    
+    // Ghi lại toàn bộ employees.txt từ bộ nhớ, do WriteBehind gọi
+    private CompletableFuture<Void> writeFile() {
+        CompletableFuture<Void> write = fileHandler.replaceFile(filename, snapshotItems());
+        markPersistedWhenDone(write);
+        return write;
+    }
 } 
\ No newline at end of file
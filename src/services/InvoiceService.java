@@ -1,51 +1,80 @@
 package services;
 
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 import models.Customer;
 import models.Employee;
 import models.Invoice;
 import models.Product;
+import utils.InvoiceParser;
+import utils.InvoicePartitions;
+import utils.ParallelInvoiceLoader;
+import utils.SalesStatisticsStore;
 
 public class InvoiceService extends BaseService<Invoice> {
     private CustomerService customerService;
     private EmployeeService employeeService;
     private ProductService productService;
+    private final InvoicePartitions invoicePartitions;
+    // Số hóa đơn mỗi trang khi xem lịch sử mua hàng
+    private static final int HISTORY_PAGE_SIZE = 10;
 
     public InvoiceService(CustomerService customerService, 
                          EmployeeService employeeService, 
                          ProductService productService) {
-        super("invoices.txt");
+        // Manifest được ghi lại sau mỗi hóa đơn nên dùng nó để biết dữ liệu hóa đơn đã đổi hay chưa
+        super(InvoicePartitions.MANIFEST);
         this.customerService = customerService;
         this.employeeService = employeeService;
         this.productService = productService;
         this.fileHandler.setServices(customerService, employeeService, productService);
-
+        try {
+            this.invoicePartitions = new InvoicePartitions(Paths.get(fileHandler.getDirectory()));
+        } catch (IOException e) {
+            throw new RuntimeException("Khong the mo du lieu hoa don: " + e.getMessage(), e);
+        }
     }
 
     @Override
     protected void loadItems() {
         items = new ArrayList<>();
         try {
-            List<String> lines = fileHandler.readAllLines(filename);
-            parseInvoicesFromLines(lines);
+            // Parse song song theo từng đoạn của file, kết quả giữ đúng thứ tự hóa đơn.
+            // Khách hàng, nhân viên, sản phẩm được tra trong bảng chụp một lần cho cả lượt load
+            items = invoicePartitions.loadAll(new ParallelInvoiceLoader(
+                InvoiceParser.withLookupTables(customerService, employeeService, productService)));
         } catch (IOException e) {
-           
+            System.err.println("Loi khi doc du lieu hoa don: " + e.getMessage());
         }
     }
 
     @Override
     public Optional<Invoice> findById(String id) {
-        loadItems();
-        return items.stream()
-            .filter(i -> i.getId().equals(id))
-            .findFirst();
+        // Danh sách đã load và file chưa đổi thì tra trong bộ nhớ
+        if (id == null) {
+            return Optional.empty();
+        }
+        if (items != null && !isFileChanged()) {
+            return Optional.ofNullable(itemIndex.get(id));
+        }
+        // Ngược lại chỉ đọc đúng bản ghi của hóa đơn nhờ chỉ mục, không load cả file
+        try {
+            return invoicePartitions.readRecord(id)
+                .map(record -> parseInvoicesFromLines(Arrays.asList(record.split("\\R"))))
+                .flatMap(invoices -> invoices.stream().findFirst());
+        } catch (IOException e) {
+            System.err.println("Loi khi doc chi muc hoa don: " + e.getMessage());
+            return super.findById(id);
+        }
     }
 
     @Override
@@ -59,14 +88,15 @@ public class InvoiceService extends BaseService<Invoice> {
     }
 
     public void processNewInvoice() {
-        loadItems();
+        ensureLoaded();
         try {
-            System.out.println("\n=== DANH SACH KHACH HANG ===");
-            customerService.displayFromFile();
+            // Nhận diện khách qua số điện thoại thay vì in toàn bộ danh sách khách hàng
+            System.out.println("\n=== CHON KHACH HANG ===");
             
             Customer customer = null;
             while (customer == null) {
-                String customerId = getStringInput("\nNhap ma khach hang (Enter de them khach hang moi): ");
+                String customerId = getStringInput(
+                    "\nNhap so dien thoai hoac ma khach hang (Enter de them khach hang moi): ");
                 
                 if (customerId.isEmpty()) {
                     String name = getStringInput("Nhap ten khach hang: ");
@@ -88,6 +118,8 @@ public class InvoiceService extends BaseService<Invoice> {
                     customer = new Customer(newId, name, address, phone);
                     customerService.addCustomer(customer);
                     System.out.println("Da them khach hang moi: " + customer.getId());
+                } else if (isPhoneInput(customerId)) {
+                    customer = selectCustomerByPhone(customerId);
                 } else {
                     Optional<Customer> existingCustomer = customerService.findById(customerId);
                     if (existingCustomer.isPresent()) {
@@ -102,7 +134,6 @@ public class InvoiceService extends BaseService<Invoice> {
             employeeService.displayEmployeesFromFile();
 
             String employeeId = getStringInput("\nNhap ma nhan vien: ");
-            employeeService.loadItems();
             
             Employee employee = employeeService.findById(employeeId)
                 .orElseThrow(() -> new IllegalArgumentException("Khong tim thay nhan vien!"));
@@ -118,42 +149,60 @@ public class InvoiceService extends BaseService<Invoice> {
             System.out.println("\n=== DANH SACH SAN PHAM ===");
             productService.displayProductsFromFile();
             
-            boolean hasProducts = false;
-            while (true) {
-                String productId = getStringInput("\nNhap ma san pham (Enter de ket thuc): ");
-                if (productId.isEmpty()) {
-                    if (!hasProducts) {
-                        System.out.println("Hoa don phai co it nhat mot san pham!");
+            // Số lượng chỉ được giữ trong phiên cho tới khi chốt hóa đơn, hủy giữa chừng thì kho không đổi
+            StockReservation reservation = productService.beginReservation(invoiceId);
+            boolean saved = false;
+            try {
+                while (true) {
+                    String productId = getStringInput("\nNhap ma san pham (Enter de ket thuc, 0 de huy hoa don): ");
+                    if (productId.equals("0")) {
+                        reservation.rollback();
+                        System.out.println("Da huy hoa don, ton kho khong thay doi.");
+                        return;
+                    }
+                    if (productId.isEmpty()) {
+                        if (reservation.getReserved().isEmpty()) {
+                            System.out.println("Hoa don phai co it nhat mot san pham!");
+                            continue;
+                        }
+                        break;
+                    }
+                    
+                    Product product = productService.findById(productId)
+                        .orElseThrow(() -> new IllegalArgumentException("Khong tim thay san pham!"));
+                    
+                    int quantity = getIntInput("Nhap so luong: ");
+                    if (quantity <= 0) {
+                        System.out.println("So luong phai lon hon 0!");
                         continue;
                     }
-                    break;
-                }
-                
-                productService.loadItems();
-                Product product = productService.findById(productId)
-                    .orElseThrow(() -> new IllegalArgumentException("Khong tim thay san pham!"));
-                
-                int quantity = getIntInput("Nhap so luong: ");
-                if (quantity <= 0) {
-                    System.out.println("So luong phai lon hon 0!");
-                    continue;
+                    
+                    if (!reservation.reserve(product, quantity)) {
+                        System.out.println("So luong ton kho khong du!");
+                        continue;
+                    }
+                    
+                    invoice.addItem(product, quantity);
+                    System.out.println("Da them " + quantity + " x " + product.getName()
+                        + ", con lai trong kho: " + reservation.available(product));
                 }
-                
-                if (product.getQuantity() < quantity) {
-                    System.out.println("So luong ton kho khong du!");
-                    continue;
+
+                // Một lần ghi tồn kho cho cả hóa đơn, rồi mới ghi hóa đơn
+                reservation.commit();
+                saveInvoice(invoice);
+                saved = true;
+            } catch (IOException e) {
+                System.err.println("Loi khi luu hoa don: " + e.getMessage());
+                return;
+            } finally {
+                // Hóa đơn chưa được lưu vì bất kỳ lý do gì (hủy, lỗi ghi, ngoại lệ khác): trả hàng lại,
+                // kể cả khi tồn kho đã được ghi
+                if (!saved) {
+                    reservation.rollback();
                 }
-                
-                invoice.addItem(product, quantity);
-                productService.updateProductQuantity(productId, quantity);
-                hasProducts = true;
-                
-                System.out.println("\n=== DANH SACH SAN PHAM HIEN TAI ===");
-                productService.displayProductsFromFile();
             }
-            
-            items.add(invoice);
-            fileHandler.saveInvoiceToText(invoice, filename);
+            putItem(invoice);
+            markPersisted();
             System.out.println("\nTao hoa don thanh cong!");
             invoice.display();
             
@@ -164,8 +213,61 @@ public class InvoiceService extends BaseService<Invoice> {
         }
     }
 
+    // Chuỗi chỉ gồm chữ số và dấu ngăn cách là số điện thoại, còn lại là mã khách hàng
+    private boolean isPhoneInput(String input) {
+        return input.matches("[+]?[0-9 .-]+") && input.chars().anyMatch(Character::isDigit);
+    }
+
+    private Customer selectCustomerByPhone(String phone) {
+        List<Customer> matches = customerService.findByPhone(phone);
+        if (matches.size() == 1) {
+            Customer customer = matches.get(0);
+            System.out.println("Khach hang: " + customer.getInfo());
+            return customer;
+        }
+
+        if (matches.isEmpty()) {
+            // Số chưa đủ hoặc gõ sai đuôi: gợi ý các số có cùng phần đầu
+            List<Customer> suggestions = customerService.findByPhonePrefix(phone, 10);
+            if (suggestions.isEmpty()) {
+                System.out.println("Khong tim thay khach hang! Vui long thu lai hoac Enter de them moi.");
+            } else {
+                System.out.println("Cac khach hang co so dien thoai bat dau bang " + phone + ":");
+                suggestions.forEach(Customer::display);
+            }
+            return null;
+        }
+
+        System.out.println("Co nhieu khach hang dung so dien thoai nay:");
+        matches.forEach(Customer::display);
+        String customerId = getStringInput("Nhap ma khach hang: ");
+        for (Customer customer : matches) {
+            if (customer.getId().equalsIgnoreCase(customerId)) {
+                return customer;
+            }
+        }
+        System.out.println("Ma khach hang khong nam trong danh sach tren!");
+        return null;
+    }
+
     public void displayInvoices() {
-        displayFromFile();
+        if (invoicePartitions.isEmpty()) {
+            System.out.println("Danh sach trong!");
+            return;
+        }
+        try {
+            for (InvoicePartitions.Partition partition : invoicePartitions.all()) {
+                InvoicePartitions.forEachLine(partition, line -> {
+                    if (!line.startsWith("=====") && !line.startsWith("----")) {
+                        System.out.println(line);
+                        System.out.println("----------------------------------------");
+                    }
+                    return true;
+                });
+            }
+        } catch (IOException e) {
+            System.err.println("Loi khi doc file: " + e.getMessage());
+        }
     }
 
     public void searchInvoices() {
@@ -173,36 +275,16 @@ public class InvoiceService extends BaseService<Invoice> {
         String invoiceId = getStringInput("\nNhap ma hoa don can tim: ").toUpperCase();
         
         try {
-            List<String> lines = fileHandler.readAllLines(filename);
-            boolean found = false;
-            boolean isCurrentInvoice = false;
-            List<String> currentInvoiceLines = new ArrayList<>();
-            
-            for (String line : lines) {
-                if (line.contains("Invoice [")) {
-                    if (isCurrentInvoice) {
-                        printInvoice(currentInvoiceLines);
-                        currentInvoiceLines.clear();
-                        isCurrentInvoice = false;
-                    }
-                    
-                    if (line.toUpperCase().contains(invoiceId)) {
-                        isCurrentInvoice = true;
-                        found = true;
-                    }
-                }
-                
-                if (isCurrentInvoice) {
-                    currentInvoiceLines.add(line);
-                }
-            }
-            
-            if (!currentInvoiceLines.isEmpty()) {
-                printInvoice(currentInvoiceLines);
+            List<String> ids = invoicePartitions.findIds(invoiceId);
+            if (ids.isEmpty()) {
+                System.out.println("Khong tim thay hoa don nao!");
+                return;
             }
             
-            if (!found) {
-                System.out.println("Khong tim thay hoa don nao!");
+            for (String id : ids) {
+                for (String record : invoicePartitions.readRecords(id)) {
+                    printInvoice(Arrays.asList(record.split("\\R")));
+                }
             }
             
         } catch (IOException e) {
@@ -210,6 +292,11 @@ public class InvoiceService extends BaseService<Invoice> {
         }
     }
 
+    // Ghi hóa đơn vào phân vùng tháng của nó rồi cập nhật chỉ mục (chỉ quét phần vừa ghi)
+    private void saveInvoice(Invoice invoice) throws IOException {
+        invoicePartitions.append(invoice).getIndex().refresh();
+    }
+
     private void printInvoice(List<String> invoiceLines) {
         System.out.println("\n========== CHI TIET HOA DON ==========");
         for (String line : invoiceLines) {
@@ -222,193 +309,68 @@ public class InvoiceService extends BaseService<Invoice> {
     public void displayCustomerPurchaseHistory(String customerId) {
         System.out.println("\n=== LICH SU MUA HANG ===");
         try {
-            List<String> lines = fileHandler.readAllLines(filename);
-            boolean found = false;
-            boolean isCurrentInvoice = false;
-            List<String> currentInvoiceLines = new ArrayList<>();
-            boolean isCustomerInvoice = false;
-            
-            for (String line : lines) {
-                if (line.contains("Invoice [")) {
-                    if (isCurrentInvoice && isCustomerInvoice) {
-                        printInvoice(currentInvoiceLines);
-                    }
-                    currentInvoiceLines.clear();
-                    isCurrentInvoice = true;
-                    isCustomerInvoice = false;
+            // Chỉ đọc các hóa đơn của đúng mã khách hàng qua chỉ mục, mới nhất trước, từng trang một
+            String id = customerId.trim();
+            int total = invoicePartitions.countByCustomer(id);
+            if (total == 0) {
+                System.out.println("Khach hang chua co lich su mua hang!");
+                return;
+            }
+
+            System.out.println("Khach hang " + id + " co " + total + " hoa don.");
+            for (int shown = 0; shown < total; shown += HISTORY_PAGE_SIZE) {
+                displayCustomerPurchaseHistory(id, shown, HISTORY_PAGE_SIZE);
+                int next = shown + HISTORY_PAGE_SIZE;
+                if (next >= total) {
+                    break;
                 }
-                
-                if (isCurrentInvoice) {
-                    currentInvoiceLines.add(line);
-                    if (line.contains("Khach hang:") && line.contains(customerId)) {
-                        isCustomerInvoice = true;
-                        found = true;
-                    }
+                String answer = getStringInput(String.format(
+                    "%nDa hien thi %d/%d hoa don. Enter de xem tiep, 0 de dung: ", next, total));
+                if (answer.equals("0")) {
+                    break;
                 }
             }
-            
-            if (!currentInvoiceLines.isEmpty() && isCustomerInvoice) {
-                printInvoice(currentInvoiceLines);
-            }
-            
-            if (!found) {
-                System.out.println("Khach hang chua co lich su mua hang!");
-            }
-            
+
         } catch (IOException e) {
+            System.err.println("Loi khi doc lich su mua hang: " + e.getMessage());
         }
     }
 
-    private void parseInvoicesFromLines(List<String> lines) {
-        Invoice currentInvoice = null;
-        
-        for (String line : lines) {
-            if (line == null || line.trim().isEmpty()) {
-                continue;
-            }
-            
-            try {
-                if (line.contains("Invoice [")) {
-                    if (currentInvoice != null) {
-                        items.add(currentInvoice);
-                    }
-                    
-                    String[] parts = line.split("\\[|\\]")[1].split(",");
-                    String id = parts[0].split(":")[1].trim();
-                    String dateStr = parts[1].split(":")[1].trim();
-                    SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-                    Date date = sdf.parse(dateStr);
-                    
-                    currentInvoice = new Invoice(id, date);
-                    
-                } else if (currentInvoice != null) {
-                    final Invoice invoice = currentInvoice;
-                    
-                    if (line.contains("Khach hang:")) {
-                        String customerInfo = line.substring(line.indexOf(":") + 1).trim();
-                        String[] parts = customerInfo.split("-", 2);
-                        if (parts.length > 1) {
-                            String customerId = parts[0].trim();
-                            customerService.findById(customerId).ifPresent(invoice::setCustomer);
-                        }
-                    } else if (line.contains("Nhan vien:")) {
-                        String employeeInfo = line.substring(line.indexOf(":") + 1).trim();
-                        String[] parts = employeeInfo.split("-", 2);
-                        if (parts.length > 1) {
-                            String employeeId = parts[0].trim();
-                            employeeService.findById(employeeId).ifPresent(invoice::setEmployee);
-                        }
-                    } else if (line.contains("(Ma:") && line.contains("x")) {
-                        String[] parts = line.split("x");
-                        String productInfo = parts[0].trim();
-                        String productId = productInfo.substring(
-                            productInfo.indexOf("(Ma:") + 4,
-                            productInfo.indexOf(")")
-                        ).trim();
-                        
-                        String quantityStr = parts[1].trim();
-                        int quantity = Integer.parseInt(
-                            quantityStr.substring(0, quantityStr.indexOf(":")).trim()
-                        );
-                        
-                        productService.findById(productId).ifPresent(product -> 
-                            invoice.addItem(product, quantity)
-                        );
-                    }
-                }
-            } catch (Exception e) {
-                continue;
-            }
-        }
-        
-        if (currentInvoice != null) {
-            items.add(currentInvoice);
+    // In một trang lịch sử mua hàng: bỏ qua skip hóa đơn mới nhất, in tối đa limit hóa đơn
+    public void displayCustomerPurchaseHistory(String customerId, int skip, int limit) throws IOException {
+        for (String record : invoicePartitions.readCustomerRecords(customerId, skip, limit)) {
+            printInvoice(Arrays.asList(record.split("\\R")));
         }
     }
 
+    // Dùng cho vài hóa đơn lẻ: tra trực tiếp qua service, không cần chụp cả bảng tra cứu
+    private List<Invoice> parseInvoicesFromLines(List<String> lines) {
+        InvoiceParser parser = new InvoiceParser(
+            customerService::findById, employeeService::findById, productService::findById);
+        lines.forEach(parser::accept);
+        return parser.finish();
+    }
+
     public void displayInvoiceStatistics() {
         try {
-            List<String> lines = fileHandler.readAllLines(filename);
-            if (lines.isEmpty()) {
+            if (invoicePartitions.isEmpty()) {
                 System.out.println("Chua co hoa don nao!");
                 return;
             }
 
-            double totalRevenue = 0;
-            int totalProducts = 0;
-            Map<String, ProductSalesStats> productSales = new HashMap<>();
-            Map<String, CustomerStats> customerStats = new HashMap<>();
-            Map<String, EmployeeStats> employeeStats = new HashMap<>();
-
-            String currentCustomerId = null;
-            String currentEmployeeId = null;
-            double currentInvoiceTotal = 0;
-
-            for (String line : lines) {
-                line = line.trim();
-                
-                if (line.contains("Khach hang:")) {
-                    currentCustomerId = line.substring(line.indexOf(":") + 1).trim().split("-")[0].trim();
-                } else if (line.contains("Nhan vien:")) {
-                    currentEmployeeId = line.substring(line.indexOf(":") + 1).trim().split("-")[0].trim();
-                } else if (line.contains("(Ma:") && line.contains("x")) {
-                    try {
-                        String[] parts = line.split("x");
-                        String productInfo = parts[0].trim();
-                        String productName = productInfo.substring(2, productInfo.indexOf("(Ma:")).trim();
-                        String productId = productInfo.substring(productInfo.indexOf("(Ma:") + 4, productInfo.indexOf(")")).trim();
-                        String quantityAndPrice = parts[1].trim();
-                        int quantity = Integer.parseInt(quantityAndPrice.substring(0, quantityAndPrice.indexOf(":")).trim());
-                        double price = Double.parseDouble(quantityAndPrice.substring(quantityAndPrice.indexOf(":") + 1)
-                            .replace("VND", "").replace(",", "").trim());
-                        
-                        totalProducts += quantity;
-                        double pricePerUnit = price / quantity;
-                        ProductSalesStats stats = productSales.computeIfAbsent(productId,
-                            k -> new ProductSalesStats(productId, productName));
-                        stats.addSale(quantity, pricePerUnit);
-                        
-                    } catch (Exception e) {
-                        System.err.println("Loi khi xu ly chi tiet san pham: " + e.getMessage());
-                    }
-                } else if (line.startsWith("Tong tien:")) {
-                    String amountStr = line.substring(line.indexOf(":") + 1)
-                        .replace("VND", "")
-                        .replace(",", "")
-                        .trim();
-                    currentInvoiceTotal = Double.parseDouble(amountStr);
-                    totalRevenue += currentInvoiceTotal;
-                    final String finalCustomerId = currentCustomerId;
-                    final String finalEmployeeId = currentEmployeeId;
-                    final double finalInvoiceTotal = currentInvoiceTotal;
-
-                    if (finalCustomerId != null) {
-                        customerService.findById(finalCustomerId).ifPresent(customer -> 
-                            customerStats.computeIfAbsent(finalCustomerId, 
-                                k -> new CustomerStats(customer))
-                                .addInvoice(finalInvoiceTotal));
-                    }
-
-                    if (finalEmployeeId != null) {
-                        employeeService.findById(finalEmployeeId).ifPresent(employee -> 
-                            employeeStats.computeIfAbsent(finalEmployeeId, 
-                                k -> new EmployeeStats(employee))
-                                .addInvoice(finalInvoiceTotal));
-                    }
-
-                    currentCustomerId = null;
-                    currentEmployeeId = null;
-                    currentInvoiceTotal = 0;
-                }
+            // Số liệu từng tháng được cộng dồn sẵn, chỉ tháng đang mở cần đọc thêm hóa đơn mới ghi
+            List<SalesStatisticsStore> monthly = new ArrayList<>();
+            for (InvoicePartitions.Partition partition : invoicePartitions.all()) {
+                monthly.add(partition.getStatistics());
             }
+            SalesStatisticsStore salesStatistics = SalesStatisticsStore.combine(monthly);
 
-            
             System.out.println("\n=== THONG KE HOA DON ===");
-            System.out.printf("Tong doanh thu: %,.0f VND%n", totalRevenue);
-            System.out.println("Tong so san pham da ban: " + totalProducts);
+            System.out.printf("Tong doanh thu: %,.0f VND%n", salesStatistics.getTotalRevenue());
+            System.out.println("Tong so san pham da ban: " + salesStatistics.getTotalProducts());
 
             System.out.println("\nTop san pham ban chay:");
-            productSales.values().stream()
+            salesStatistics.getProductSales().stream()
                 .sorted((p1, p2) -> Double.compare(p2.getTotalRevenue(), p1.getTotalRevenue()))
                 .limit(5)
                 .forEach(stats -> {
@@ -419,25 +381,29 @@ public class InvoiceService extends BaseService<Invoice> {
                         stats.getTotalRevenue());
                 });
             System.out.println("\nTop khach hang:");
-            customerStats.values().stream()
+            salesStatistics.getCustomerStats().stream()
+                .filter(stats -> customerService.findById(stats.getId()).isPresent())
                 .sorted((c1, c2) -> Double.compare(c2.getTotalAmount(), c1.getTotalAmount()))
                 .limit(5)
                 .forEach(stats -> {
+                    Customer customer = customerService.findById(stats.getId()).get();
                     System.out.printf("- %s - %s: %d hoa don - %,.0f VND%n",
-                        stats.getCustomer().getId(),
-                        stats.getCustomer().getName(),
+                        customer.getId(),
+                        customer.getName(),
                         stats.getInvoiceCount(),
                         stats.getTotalAmount());
                 });
 
             
             System.out.println("\nHieu suat nhan vien:");
-            employeeStats.values().stream()
+            salesStatistics.getEmployeeStats().stream()
+                .filter(stats -> employeeService.findById(stats.getId()).isPresent())
                 .sorted((e1, e2) -> Double.compare(e2.getTotalAmount(), e1.getTotalAmount()))
                 .forEach(stats -> {
+                    Employee employee = employeeService.findById(stats.getId()).get();
                     System.out.printf("- %s - %s: %d hoa don - %,.0f VND%n",
-                        stats.getEmployee().getId(),
-                        stats.getEmployee().getName(),
+                        employee.getId(),
+                        employee.getName(),
                         stats.getInvoiceCount(),
                         stats.getTotalAmount());
                 });
@@ -447,64 +413,101 @@ public class InvoiceService extends BaseService<Invoice> {
         }
     }
 
-    private static class CustomerStats {
-        private final Customer customer;
-        private int invoiceCount = 0;
-        private double totalAmount = 0;
-        
-        public CustomerStats(Customer customer) {
-            this.customer = customer;
-        }
-        
-        public void addInvoice(double amount) {
-            invoiceCount++;
-            totalAmount += amount;
+    public void displayDailyRevenue() {
+        System.out.println("\n=== DOANH THU THEO NGAY ===");
+        SimpleDateFormat input = new SimpleDateFormat("dd/MM/yyyy");
+        input.setLenient(false);
+        try {
+            Date from = input.parse(getStringInput("Tu ngay (dd/MM/yyyy): "));
+            Date to = input.parse(getStringInput("Den ngay (dd/MM/yyyy): "));
+            displayRevenueByDateRange(from, to);
+        } catch (ParseException e) {
+            System.out.println("Ngay khong hop le!");
         }
-        
-        public Customer getCustomer() { return customer; }
-        public int getInvoiceCount() { return invoiceCount; }
-        public double getTotalAmount() { return totalAmount; }
     }
 
+    // Doanh thu từng ngày trong [from, to]: chỉ đọc các phân vùng tháng giao với khoảng ngày
+    public void displayRevenueByDateRange(Date from, Date to) {
+        if (from.after(to)) {
+            throw new IllegalArgumentException("Ngay bat dau phai truoc ngay ket thuc!");
+        }
+        SimpleDateFormat day = new SimpleDateFormat("yyyy-MM-dd");
+        String fromDay = day.format(from);
+        String toDay = day.format(to);
+        // Ngày -> {số hóa đơn, doanh thu}, theo thứ tự ngày
+        Map<String, double[]> daily = new TreeMap<>();
+        try {
+            for (InvoicePartitions.Partition partition : invoicePartitions.between(from, to)) {
+                InvoicePartitions.forEachRecord(partition, record -> {
+                    String date = invoiceDay(record.get(0));
+                    if (date.compareTo(fromDay) < 0 || date.compareTo(toDay) > 0) {
+                        return true;
+                    }
+                    for (String line : record) {
+                        if (line.startsWith("Tong tien:")) {
+                            double[] totals = daily.computeIfAbsent(date, k -> new double[2]);
+                            totals[0]++;
+                            totals[1] += parseAmount(line);
+                            break;
+                        }
+                    }
+                    return true;
+                });
+            }
+        } catch (IOException e) {
+            System.err.println("Loi khi doc hoa don: " + e.getMessage());
+            return;
+        }
 
-    private static class EmployeeStats {
-        private final Employee employee;
-        private int invoiceCount = 0;
-        private double totalAmount = 0;
-        
-        public EmployeeStats(Employee employee) {
-            this.employee = employee;
+        if (daily.isEmpty()) {
+            System.out.println("Khong co hoa don nao trong khoang ngay nay!");
+            return;
         }
-        
-        public void addInvoice(double amount) {
-            invoiceCount++;
-            totalAmount += amount;
+        int invoiceCount = 0;
+        double revenue = 0;
+        for (Map.Entry<String, double[]> entry : daily.entrySet()) {
+            System.out.printf("- %s: %d hoa don - %,.0f VND%n",
+                entry.getKey(), (int) entry.getValue()[0], entry.getValue()[1]);
+            invoiceCount += (int) entry.getValue()[0];
+            revenue += entry.getValue()[1];
         }
-        
-        public Employee getEmployee() { return employee; }
-        public int getInvoiceCount() { return invoiceCount; }
-        public double getTotalAmount() { return totalAmount; }
+        System.out.printf("Tong cong: %d hoa don - %,.0f VND%n", invoiceCount, revenue);
     }
 
-    private static class ProductSalesStats {
-        private final String productId;
-        private final String productName;
-        private int totalQuantity = 0;
-        private double totalRevenue = 0;
-        
-        public ProductSalesStats(String productId, String productName) {
-            this.productId = productId;
-            this.productName = productName;
+    // Doanh thu mỗi tháng lấy từ thống kê của từng phân vùng, không cần đọc lại hóa đơn
+    public void displayMonthlyRevenue() {
+        System.out.println("\n=== DOANH THU THEO THANG ===");
+        if (invoicePartitions.isEmpty()) {
+            System.out.println("Chua co hoa don nao!");
+            return;
         }
-        
-        public void addSale(int quantity, double pricePerUnit) {
-            this.totalQuantity += quantity;
-            this.totalRevenue += quantity * pricePerUnit;
+        try {
+            for (InvoicePartitions.Partition partition : invoicePartitions.all()) {
+                System.out.printf("- %s: %d hoa don - %,.0f VND%s%n",
+                    partition.getMonth(),
+                    partition.getInvoiceCount(),
+                    partition.getStatistics().getTotalRevenue(),
+                    partition.isSealed() ? " (da chot)" : "");
+            }
+        } catch (IOException e) {
+            System.err.println("Loi khi xu ly thong ke: " + e.getMessage());
+        }
+    }
+
+    // "Invoice [ID: HD001, Date: 2024-11-15 14:41:44]" -> "2024-11-15"
+    private static String invoiceDay(String header) {
+        int dateIndex = header.indexOf("Date:");
+        String date = dateIndex < 0 ? "" : header.substring(dateIndex + 5).trim();
+        return date.length() >= 10 ? date.substring(0, 10) : "";
+    }
+
+    private static double parseAmount(String line) {
+        try {
+            return Double.parseDouble(line.substring(line.indexOf(":") + 1)
+                .replace("VND", "").replace(",", "").trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Loi khi xu ly tong tien: " + e.getMessage());
+            return 0;
         }
-        
-        public String getProductId() { return productId; }
-        public String getProductName() { return productName; }
-        public int getTotalQuantity() { return totalQuantity; }
-        public double getTotalRevenue() { return totalRevenue; }
     }
-} 
\ No newline at end of file
+}
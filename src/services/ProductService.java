@@ -1,61 +1,164 @@
 package services;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 import models.Accessory;
 import models.Computer;
 import models.Product;
+import utils.ProcessFileLock;
+import utils.ProductStore;
+import utils.RecordParser;
+import utils.StockCounters;
+import utils.StockLedger;
+import utils.TrigramIndex;
+import utils.WriteBehind;
 
 public class ProductService extends BaseService<Product> {
+    // products.txt chỉ còn là bản xuất dạng văn bản, dữ liệu chính nằm trong products.dat
     private static final String FILENAME = "products.txt";
+    private static final String STORE_FILENAME = "products.dat";
+    // Sổ kho ghi mọi thay đổi tồn kho, dùng để dựng lại và tra tồn kho theo thời điểm
+    private static final String LEDGER_FILENAME = "stock.log";
+    private static final String LEDGER_SNAPSHOT_FILENAME = "stock.snap";
+    private final ProductStore store;
+    private final StockLedger ledger;
+    // Tồn kho và phần đang giữ cho các hóa đơn chưa chốt, kiểm tra và giữ hàng không cần khóa
+    private final StockCounters counters = new StockCounters();
+    // products.txt chỉ là bản xuất của products.dat (đã ghi bền từng thay đổi) nên không cần nhật ký,
+    // chỉ gộp các lần sửa/xóa để xuất lại một lần
+    private final WriteBehind<Product> textExport = new WriteBehind<>(null, null, this::writeTextExport);
+    // Chỉ mục tìm kiếm theo tên, mã, CPU, RAM, ổ cứng và loại phụ kiện, đồng bộ với items
+    private final TrigramIndex searchIndex = new TrigramIndex();
 
     public ProductService() {
-        super(FILENAME);
-        loadItems();
+        super(STORE_FILENAME);
+        this.store = new ProductStore(Paths.get(fileHandler.getDirectory() + STORE_FILENAME));
+        this.ledger = new StockLedger(Paths.get(fileHandler.getDirectory() + LEDGER_FILENAME),
+            Paths.get(fileHandler.getDirectory() + LEDGER_SNAPSHOT_FILENAME));
+        ensureLoaded();
     }
 
     @Override
     protected void loadItems() {
         try {
-            List<String> lines = fileHandler.readAllLines(filename);
+            if (store.exists()) {
+                items = store.loadAll();
+            } else {
+                importFromText();
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Loi khi doc kho san pham: " + e.getMessage());
             items = new ArrayList<>();
-            
-            for (String line : lines) {
+        }
+        // Chỉ đánh chỉ mục lại và đồng bộ bộ đếm cho các sản phẩm mới hoặc đã đổi so với lần load trước
+        items = mergeReloaded(items, Product::getInfo, product -> {
+            searchIndex.put(product.getId(), searchText(product));
+            counters.sync(product.getId(), product.getQuantity());
+        }, id -> {
+            searchIndex.remove(id);
+            counters.remove(id);
+        });
+    }
+
+    // Lần chạy đầu tiên: chuyển dữ liệu từ products.txt sang kho nhị phân
+    private void importFromText() throws IOException {
+        items = new ArrayList<>();
+        RecordParser parser = new RecordParser();
+        try {
+            fileHandler.forEachLine(FILENAME, line -> {
                 if (line.trim().isEmpty() || line.startsWith("===") || line.startsWith("---")) {
-                    continue;
+                    return true;
                 }
                 
                 Product product = null;
                 if (line.contains("Computer [")) {
-                    product = parseComputer(line);
+                    product = parser.parseComputer(line);
                 } else if (line.contains("Accessory [")) {
-                    product = parseAccessory(line);
+                    product = parser.parseAccessory(line);
                 }
                 
                 if (product != null) {
                     items.add(product);
                 }
-            }
+                return true;
+            });
         } catch (IOException e) {
             System.err.println("Loi khi doc file san pham: " + e.getMessage());
             items = new ArrayList<>();
         }
+        store.replaceAll(items);
+    }
+
+    // Ghi lại products.txt từ dữ liệu trong bộ nhớ
+    public void exportToText() {
+        ensureLoaded();
+        fileHandler.replaceFile(FILENAME, items);
     }
 
     @Override
-    public Optional<Product> findById(String id) {
-        loadItems();
-        return items.stream()
-            .filter(p -> p.getId().equals(id))
-            .findFirst();
+    public void close() {
+        try {
+            textExport.close();
+        } catch (IOException e) {
+            System.err.println("Loi khi ghi tre du lieu: " + e.getMessage());
+        }
+        super.close();
+    }
+
+    private CompletableFuture<Void> writeTextExport() {
+        return fileHandler.replaceFile(FILENAME, snapshotItems());
+    }
+
+    private void saveToStore(Product product) {
+        try {
+            store.put(product);
+        } catch (IOException e) {
+            throw new RuntimeException("Luu san pham that bai!", e);
+        }
+    }
+
+    private void removeFromStore(String id) {
+        try {
+            store.remove(id);
+        } catch (IOException e) {
+            throw new RuntimeException("Xoa san pham that bai!", e);
+        }
+    }
+
+    // Mở sổ kho ở lần dùng đầu tiên; chưa có sổ thì tồn kho hiện tại là số đầu kỳ.
+    // Vì vậy mọi thay đổi phải được ghi sổ trước khi áp vào items, để không bị tính hai lần
+    private StockLedger ledger() throws IOException {
+        // Load trước khi vào khóa của sổ để thứ tự khóa luôn là khóa kho -> khóa sổ
+        ensureLoaded();
+        ledger.open(() -> {
+            Map<String, Integer> balances = new HashMap<>();
+            for (Product product : snapshotItems()) {
+                balances.put(product.getId(), product.getQuantity());
+            }
+            return balances;
+        });
+        return ledger;
+    }
+
+    private void recordStock(byte type, String productId, int delta, String reference) {
+        if (delta == 0) {
+            return;
+        }
+        try {
+            ledger().append(type, productId, delta, reference);
+        } catch (IOException e) {
+            throw new RuntimeException("Ghi so kho that bai!", e);
+        }
     }
 
     @Override
@@ -72,166 +175,176 @@ public class ProductService extends BaseService<Product> {
     }
 
     public void addProduct(Product product) {
-        if (items == null) {
-            items = new ArrayList<>();
-        }
-        
         if (findById(product.getId()).isPresent()) {
             System.out.println("San pham voi ma " + product.getId() + " da ton tai!");
             return;
         }
         
-        items.add(product);
-        fileHandler.saveToFile(FILENAME, List.of(product));
+        recordStock(StockLedger.RECEIPT, product.getId(), product.getQuantity(), "Nhap kho ban dau");
+        saveToStore(product);
+        putItem(product);
+        counters.sync(product.getId(), product.getQuantity());
+        markPersisted();
+        fileHandler.appendToFile(FILENAME, List.of(product));
         System.out.println("Them san pham thanh cong!");
-        
-        loadItems();
     }
 
     public void updateProduct(Product product) {
-        for (int i = 0; i < items.size(); i++) {
-            if (items.get(i).getId().equals(product.getId())) {
-                items.set(i, product);
-                break;
-            }
+        ensureLoaded();
+        Product existing = itemIndex.get(product.getId());
+        if (existing != null && existing != product) {
+            recordStock(StockLedger.ADJUSTMENT, product.getId(),
+                product.getQuantity() - existing.getQuantity(), "Cap nhat san pham");
         }
-
-        fileHandler.setUpdatingFile(true);
-        fileHandler.saveToFile(FILENAME, items);
-        fileHandler.setUpdatingFile(false);
+        saveToStore(product);
+        putItem(product);
+        counters.sync(product.getId(), product.getQuantity());
+        markPersisted();
+        textExport.put(product);
     }
 
     public boolean updateProductQuantity(String productId, int quantity) {
-        if (items == null) {
-            loadItems();
-        }
-        
-        Optional<Product> productOpt = findById(productId);
-        if (productOpt.isEmpty()) {
+        return updateProductQuantity(productId, quantity, "");
+    }
+
+    // Bán quantity sản phẩm (âm là trả lại hàng); reference là mã hóa đơn để đối chiếu trong sổ kho
+    public boolean updateProductQuantity(String productId, int quantity, String reference) {
+        if (findById(productId).isEmpty()) {
             System.out.println("Không tìm thấy sản phẩm với mã: " + productId);
             return false;
         }
         
-        Product product = productOpt.get();
-        int currentQuantity = product.getQuantity();
-        
-        if (currentQuantity < quantity) {
+        // Giữ hàng trước bằng compareAndSet: hai luồng cùng bán món cuối thì chỉ một luồng giữ được
+        if (quantity > 0 && !counters.reserve(productId, quantity)) {
             System.out.println("Số lượng tồn kho không đủ!");
             return false;
         }
         
         try {
-            List<String> lines = fileHandler.readAllLines(FILENAME);
-            List<String> newLines = new ArrayList<>();
-            
-            for (String line : lines) {
-                if (line.contains("ID: " + productId)) {
-                    String newQuantity = String.valueOf(currentQuantity - quantity);
-                    String modifiedLine = line.replaceFirst("Quantity: \\d+", "Quantity: " + newQuantity);
-                    newLines.add(modifiedLine);
-                } else {
-                    newLines.add(line);
-                }
-            }
-            
-            fileHandler.setUpdatingFile(true);
-            Files.write(Path.of(fileHandler.getDirectory() + FILENAME), newLines);
-            fileHandler.setUpdatingFile(false);
-            
-            product.setQuantity(currentQuantity - quantity);
-            
-            for (int i = 0; i < items.size(); i++) {
-                if (items.get(i).getId().equals(productId)) {
-                    items.get(i).setQuantity(currentQuantity - quantity);
-                    break;
-                }
-            }
-            
+            applyStockChanges(Map.of(productId, -quantity), StockLedger.SALE, reference);
             System.out.println("Cập nhật số lượng sản phẩm thành công!");
             return true;
-        } catch (IOException e) {
+        } catch (RuntimeException e) {
+            if (quantity > 0) {
+                counters.release(productId, quantity);
+            }
             System.err.println("Lỗi khi cập nhật số lượng: " + e.getMessage());
             return false;
         }
     }
 
-    private Computer parseComputer(String line) {
+    // Mở phiên giữ hàng cho một hóa đơn; reference là mã hóa đơn ghi vào sổ kho khi commit
+    public StockReservation beginReservation(String reference) {
+        ensureLoaded();
+        return new StockReservation(this, reference);
+    }
+
+    // Số lượng còn bán được: tồn kho trừ phần đang giữ cho các hóa đơn chưa chốt
+    public int getAvailableQuantity(String productId) {
+        return counters.available(productId);
+    }
+
+    boolean reserveStock(String productId, int quantity) {
+        return counters.reserve(productId, quantity);
+    }
+
+    void releaseStock(String productId, int quantity) {
+        counters.release(productId, quantity);
+    }
+
+    // Áp một lô thay đổi tồn kho: kiểm tra đủ hàng cho cả lô trước, rồi ghi sổ kho một lần
+    // và ghi products.dat một lần. Nếu products.dat ghi lỗi sau khi sổ đã ghi thì sổ vẫn đúng,
+    // dựng lại tồn kho từ sổ kho sẽ sửa được.
+    // Phần bán (SALE, số âm) đã được giữ trước qua bộ đếm CAS nên không cần khóa chung của service;
+    // chỉ phần ghi file là tuần tự, dưới khóa ghi products.dat giữ từ lúc đọc đến lúc ghi để luồng
+    // hoặc tiến trình khác không ghi xen vào giữa
+    void applyStockChanges(Map<String, Integer> deltas, byte type, String reference) {
+        ProcessFileLock.Hold hold = store.lockExclusive();
         try {
-            String content = line.substring(line.indexOf("[") + 1, line.lastIndexOf("]"));
-            String[] parts = content.split(", ");
-            
-            String id = parts[0].split(": ")[1];
-            String name = parts[1].split(": ")[1];
-            double price = Double.parseDouble(parts[2].split(": ")[1].replace(",", ""));
-            int quantity = Integer.parseInt(parts[3].split(": ")[1]);
-            
-            String cpu = parts[4].split(": ")[1];
-            String ram = parts[5].split(": ")[1];
-            String hardDrive = parts[6].split(": ")[1].replace("GB", "").trim();
-            
-            return new Computer(id, name, price, quantity, cpu, ram, hardDrive);
-        } catch (Exception e) {
-            System.err.println("Lỗi khi parse Computer: " + e.getMessage());
-            return null;
+            applyStockChangesLocked(deltas, type, reference);
+        } finally {
+            hold.close();
         }
     }
 
-    private Accessory parseAccessory(String line) {
+    private void applyStockChangesLocked(Map<String, Integer> deltas, byte type, String reference) {
+        // Tiến trình khác có thể vừa ghi mà sự kiện thay đổi chưa tới: phải so số thế hệ ngay
+        ensureLoadedFromFile();
+        Map<String, Integer> quantities = new HashMap<>();
+        for (Map.Entry<String, Integer> delta : deltas.entrySet()) {
+            Product product = itemIndex.get(delta.getKey());
+            if (product == null) {
+                throw new IllegalArgumentException("Khong tim thay san pham: " + delta.getKey());
+            }
+            int quantity = product.getQuantity() + delta.getValue();
+            if (quantity < 0) {
+                throw new IllegalArgumentException("So luong ton kho khong du: " + delta.getKey());
+            }
+            quantities.put(product.getId(), quantity);
+        }
+
         try {
-            String content = line.substring(line.indexOf("[") + 1, line.lastIndexOf("]"));
-            String[] parts = content.split(", ");
-            
-            String id = parts[0].split(": ")[1];
-            String name = parts[1].split(": ")[1];
-            double price = Double.parseDouble(parts[2].split(": ")[1].replace(",", ""));
-            int quantity = Integer.parseInt(parts[3].split(": ")[1]);
-            String type = parts[4].split(": ")[1];
-            
-            return new Accessory(id, name, price, quantity, type);
-        } catch (Exception e) {
-            System.err.println("Lỗi khi parse Accessory: " + e.getMessage());
-            return null;
+            ledger().append(type, deltas, reference);
+            store.updateQuantities(quantities);
+            markPersisted();
+        } catch (IOException e) {
+            throw new RuntimeException("Cap nhat ton kho that bai!", e);
         }
+        quantities.forEach((id, quantity) -> itemIndex.get(id).setQuantity(quantity));
+        deltas.forEach((id, delta) -> {
+            if (type == StockLedger.SALE && delta < 0) {
+                counters.commit(id, -delta);
+            } else {
+                counters.add(id, delta);
+            }
+        });
     }
 
-    private String getValue(String[] parts, int index) {
-        if (index < parts.length) {
-            String part = parts[index].trim();
-            int colonIndex = part.indexOf(":");
-            if (colonIndex != -1) {
-                return part.substring(colonIndex + 1).trim();
-            }
+    // Load lại products.dat dưới khóa ghi của kho, cùng khóa với applyStockChanges
+    @Override
+    protected void withLoadLock(Runnable load) {
+        ProcessFileLock.Hold hold = store.lockExclusive();
+        try {
+            load.run();
+        } finally {
+            hold.close();
         }
-        return "";
     }
 
     public List<Product> findByName(String name) {
-        return items.stream()
-                .filter(p -> p.getName().toLowerCase().contains(name.toLowerCase()))
+        ensureLoaded();
+        String keyword = name.toLowerCase();
+        // Chỉ mục phủ nhiều trường nên lọc lại theo tên
+        return findIndexed(keyword).stream()
+                .filter(p -> p.getName().toLowerCase().contains(keyword))
                 .collect(Collectors.toList());
     }
 
     public void deleteProduct(String id) {
-        items.removeIf(p -> p.getId().equals(id));
-        fileHandler.setUpdatingFile(true);
-        fileHandler.saveToFile(FILENAME, items);
-        fileHandler.setUpdatingFile(false);
+        ensureLoaded();
+        Product existing = itemIndex.get(id);
+        if (existing != null) {
+            recordStock(StockLedger.ADJUSTMENT, id, -existing.getQuantity(), "Xoa san pham");
+        }
+        removeFromStore(id);
+        counters.remove(id);
+        removeItem(id);
+        markPersisted();
+        textExport.remove(id);
     }
 
     public List<Product> getAllProducts() {
-        loadItems();
+        ensureLoaded();
         return new ArrayList<>(items);
     }
 
     public void displayProductsFromFile() {
-        try {
-            List<String> lines = fileHandler.readAllLines(filename);
-            for (String line : lines) {
-                System.out.println(line);
-            }
-        } catch (IOException e) {
-            System.err.println("Loi khi doc file san pham: " + e.getMessage());
+        ensureLoaded();
+        for (Product product : items) {
+            System.out.println("----------------------------------------");
+            System.out.println(product.getInfo());
         }
+        System.out.println("----------------------------------------");
     }
 
     public void addComputer(String id, String name, double price, int quantity, 
@@ -271,6 +384,7 @@ public class ProductService extends BaseService<Product> {
             product.setPrice(price);
         }
         if (quantity != null && quantity >= 0) {
+            recordStock(StockLedger.ADJUSTMENT, id, quantity - product.getQuantity(), "Dieu chinh ton kho");
             product.setQuantity(quantity);
         }
 
@@ -306,95 +420,78 @@ public class ProductService extends BaseService<Product> {
         updateProduct(product);
     }
 
-    public void deleteProductById(String id) {
-        try {
-            loadItems();
-            if (findById(id).isEmpty()) {
-                throw new IllegalArgumentException("Khong tim thay san pham!");
-            }
-
-            List<String> lines = fileHandler.readAllLines(filename);
-            List<String> newLines = new ArrayList<>();
-            boolean skipProduct = false;
+    public void receiveStock(String productId, int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("So luong nhap phai lon hon 0!");
+        }
+        Product product = findById(productId)
+            .orElseThrow(() -> new IllegalArgumentException("Khong tim thay san pham!"));
 
-            for (String line : lines) {
-                if (line.startsWith("=====") || line.isEmpty()) {
-                    newLines.add(line);
-                    continue;
-                }
-                
-                if (line.startsWith("----")) {
-                    if (!skipProduct) {
-                        newLines.add(line);
-                    }
-                    skipProduct = false;
-                    continue;
-                }
+        applyStockChanges(Map.of(productId, quantity), StockLedger.RECEIPT, "Nhap hang");
+        System.out.println("Nhap hang thanh cong! Ton kho moi: " + product.getQuantity());
+    }
 
-                if (line.contains("ID: " + id + ",")) {
-                    skipProduct = true;
-                    continue;
-                }
+    // Tồn kho của sản phẩm tại một thời điểm trong quá khứ, tính từ sổ kho
+    public void displayStockAt(String productId, Date time) {
+        try {
+            OptionalInt quantity = ledger().quantityAt(productId, time.getTime());
+            if (quantity.isEmpty()) {
+                System.out.println("Chua co so lieu ton kho truoc thoi diem mo so kho!");
+                return;
+            }
+            System.out.printf("Ton kho cua %s luc %s: %d%n", productId,
+                new SimpleDateFormat("dd/MM/yyyy HH:mm").format(time), quantity.getAsInt());
+        } catch (IOException e) {
+            System.err.println("Loi khi doc so kho: " + e.getMessage());
+        }
+    }
 
-                if (!skipProduct) {
-                    newLines.add(line);
+    // Tính lại tồn kho từ toàn bộ sổ kho và sửa các sản phẩm có số lượng lệch (ví dụ products.dat bị hỏng)
+    public void rebuildStockFromLedger() {
+        ensureLoaded();
+        try {
+            Map<String, Integer> quantities = ledger().rebuild();
+            int corrected = 0;
+            for (Product product : items) {
+                Integer quantity = quantities.get(product.getId());
+                if (quantity != null && quantity != product.getQuantity()) {
+                    store.updateQuantity(product.getId(), quantity);
+                    product.setQuantity(quantity);
+                    counters.sync(product.getId(), quantity);
+                    corrected++;
                 }
             }
-
-            fileHandler.setUpdatingFile(true);
-            Files.write(Paths.get(fileHandler.getDirectory() + filename), newLines);
-            fileHandler.setUpdatingFile(false);
-            
-            loadItems();
-            
-            System.out.println("Xoa san pham thanh cong!");
-            
+            markPersisted();
+            System.out.println("Da dung lai ton kho tu so kho, sua " + corrected + " san pham.");
         } catch (IOException e) {
-            System.err.println("Loi khi xoa san pham: " + e.getMessage());
-            throw new RuntimeException("Xoa san pham that bai!", e);
+            System.err.println("Loi khi dung lai ton kho: " + e.getMessage());
         }
     }
 
+    public void deleteProductById(String id) {
+        if (findById(id).isEmpty()) {
+            throw new IllegalArgumentException("Khong tim thay san pham!");
+        }
+
+        deleteProduct(id);
+        System.out.println("Xoa san pham thanh cong!");
+    }
+
     public List<Product> searchProducts(String searchKeyword) {
-        loadItems();
+        ensureLoaded();
         List<Product> results = new ArrayList<>();
+        String keyword = searchKeyword.toLowerCase().trim();
         
-        try {
-            String keyword = searchKeyword.toLowerCase().trim();
-            List<String> lines = fileHandler.readAllLines(filename);
-            
-            for (String line : lines) {
-                String lowerLine = line.toLowerCase();
-                if (line.trim().isEmpty() || line.startsWith("===") || line.startsWith("---")) {
-                    continue;
-                }
-                
-                if (lowerLine.contains(keyword)) {
-                    Product product = null;
-                    if (line.contains("Computer [")) {
-                        product = parseComputer(line);
-                    } else if (line.contains("Accessory [")) {
-                        product = parseAccessory(line);
-                    }
-                    
-                    if (product != null) {
-                        results.add(product);
-                    }
-                }
-            }
-            
-            if (!results.isEmpty()) {
-                System.out.println("\nKet qua tim kiem cho '" + searchKeyword + "':");
-                for (Product product : results) {
-                    System.out.println("----------------------------------------");
-                    System.out.println(product.getInfo());
-                }
-            } else {
-                System.out.println("Khong tim thay san pham nao!");
+        results.addAll(findIndexed(keyword));
+        
+        if (!results.isEmpty()) {
+            System.out.println("\nKet qua tim kiem cho '" + searchKeyword + "':");
+            for (Product product : results) {
+                System.out.println("----------------------------------------");
+                System.out.println(product.getInfo());
             }
-            
-        } catch (IOException e) {
-            System.err.println("Loi khi doc file san pham: " + e.getMessage());
+        } else {
+            System.out.println("Khong tim thay san pham nao!");
         }
         
         return results;
@@ -402,8 +499,47 @@ public class ProductService extends BaseService<Product> {
 
     
 
+    private List<Product> findIndexed(String keyword) {
+        List<Product> results = new ArrayList<>();
+        for (String id : searchIndex.search(keyword)) {
+            Product product = itemIndex.get(id);
+            if (product != null) {
+                results.add(product);
+            }
+        }
+        return results;
+    }
+
+    // Các trường được tìm kiếm, cách nhau bởi xuống dòng để từ khóa không khớp vắt qua hai trường
+    private static String searchText(Product product) {
+        StringBuilder text = new StringBuilder()
+            .append(product.getId()).append('\n')
+            .append(product.getName());
+        if (product instanceof Computer) {
+            Computer computer = (Computer) product;
+            text.append('\n').append(computer.getCpu())
+                .append('\n').append(computer.getRam())
+                .append('\n').append(computer.getHardDrive());
+        } else if (product instanceof Accessory) {
+            text.append('\n').append(((Accessory) product).getType());
+        }
+        return text.toString();
+    }
+
+    @Override
+    protected void putItem(Product product) {
+        super.putItem(product);
+        searchIndex.put(product.getId(), searchText(product));
+    }
+
+    @Override
+    protected void removeItem(String id) {
+        super.removeItem(id);
+        searchIndex.remove(id);
+    }
+
     public Map<String, Integer> getProductStatistics() {
-        loadItems();
+        ensureLoaded();
         Map<String, Integer> stats = new HashMap<>();
         
         int totalProducts = items.size();
@@ -426,14 +562,14 @@ public class ProductService extends BaseService<Product> {
     }
 
     public double calculateTotalInventoryValue() {
-        loadItems();
+        ensureLoaded();
         return items.stream()
             .mapToDouble(p -> p.getPrice() * p.getQuantity())
             .sum();
     }
 
     public List<Product> getLowStockProducts(int threshold) {
-        loadItems();
+        ensureLoaded();
         return items.stream()
             .filter(p -> p.getQuantity() <= threshold)
             .collect(Collectors.toList());
@@ -458,7 +594,7 @@ public class ProductService extends BaseService<Product> {
     }
 
     public void validateStock() {
-        loadItems();
+        ensureLoaded();
         List<Product> invalidProducts = items.stream()
             .filter(p -> p.getQuantity() < 0 || p.getPrice() <= 0)
             .collect(Collectors.toList());
@@ -0,0 +1,81 @@
+package services;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import models.Product;
+import utils.StockLedger;
+
+// Phiên giữ hàng cho một hóa đơn: khi nhập từng dòng, số lượng được giữ trên bộ đếm tồn kho
+// trong bộ nhớ (các quầy khác thấy ngay phần đã giữ nên không bán trùng), đến commit mới ghi
+// toàn bộ thay đổi tồn kho (sổ kho và products.dat) trong một lần.
+// Bỏ ngang trước commit thì chỉ trả lại phần đã giữ; sau commit thì hoàn lại bằng một lần ghi ngược.
+public class StockReservation {
+    private final ProductService productService;
+    private final String reference;
+    // Giữ thứ tự nhập để sổ kho ghi theo đúng thứ tự các dòng hóa đơn
+    private final Map<String, Integer> reserved = new LinkedHashMap<>();
+    private boolean committed = false;
+    private boolean closed = false;
+
+    StockReservation(ProductService productService, String reference) {
+        this.productService = productService;
+        this.reference = reference;
+    }
+
+    public String getReference() {
+        return reference;
+    }
+
+    public boolean isCommitted() {
+        return committed;
+    }
+
+    public Map<String, Integer> getReserved() {
+        return Collections.unmodifiableMap(reserved);
+    }
+
+    // Số lượng còn bán được của sản phẩm sau khi trừ phần đã giữ của mọi phiên
+    public int available(Product product) {
+        return productService.getAvailableQuantity(product.getId());
+    }
+
+    public boolean reserve(Product product, int quantity) {
+        requireOpen();
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("So luong phai lon hon 0!");
+        }
+        if (!productService.reserveStock(product.getId(), quantity)) {
+            return false;
+        }
+        reserved.merge(product.getId(), quantity, Integer::sum);
+        return true;
+    }
+
+    public void commit() {
+        requireOpen();
+        Map<String, Integer> deltas = new LinkedHashMap<>();
+        reserved.forEach((id, quantity) -> deltas.put(id, -quantity));
+        productService.applyStockChanges(deltas, StockLedger.SALE, reference);
+        committed = true;
+        closed = true;
+    }
+
+    // Trước commit: trả lại phần đã giữ. Sau commit: trả hàng lại kho (ví dụ khi không lưu được hóa đơn)
+    public void rollback() {
+        if (committed) {
+            productService.applyStockChanges(reserved, StockLedger.ADJUSTMENT, "Huy " + reference);
+            committed = false;
+        } else if (!closed) {
+            reserved.forEach(productService::releaseStock);
+        }
+        reserved.clear();
+        closed = true;
+    }
+
+    private void requireOpen() {
+        if (closed) {
+            throw new RuntimeException("Phien giu hang da ket thuc!");
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package utils;
+
+import models.Customer;
+import java.util.List;
+
+// Chỉ mục tìm kiếm khách hàng theo mã, tên, địa chỉ (đã bỏ dấu) và số điện thoại (chỉ giữ chữ số).
+// Mỗi trường được ghi sau một dấu xuống dòng nên tìm theo tiền tố chỉ là tìm chuỗi con "\n" + từ khóa.
+public class CustomerSearchIndex {
+    private static final char FIELD_START = '\n';
+
+    private final TrigramIndex index = new TrigramIndex();
+
+    public void clear() {
+        index.clear();
+    }
+
+    public void put(Customer customer) {
+        StringBuilder text = new StringBuilder()
+            .append(FIELD_START).append(TextNormalizer.fold(customer.getId()))
+            .append(FIELD_START).append(TextNormalizer.fold(customer.getName()))
+            .append(FIELD_START).append(TextNormalizer.fold(customer.getAddress()))
+            .append(FIELD_START).append(TextNormalizer.digitsOnly(customer.getPhone()));
+        index.put(customer.getId(), text.toString());
+    }
+
+    public void remove(String id) {
+        index.remove(id);
+    }
+
+    // Mã khách hàng có một trường chứa từ khóa, không phân biệt hoa thường và dấu
+    public List<String> search(String keyword) {
+        return index.search(normalizeQuery(keyword));
+    }
+
+    // Mã khách hàng có một trường bắt đầu bằng từ khóa
+    public List<String> searchPrefix(String keyword) {
+        return index.search(FIELD_START + normalizeQuery(keyword));
+    }
+
+    // Từ khóa chỉ gồm số và dấu ngăn cách được coi là số điện thoại: "090 123-4567" -> "0901234567"
+    private static String normalizeQuery(String keyword) {
+        String trimmed = keyword == null ? "" : keyword.trim();
+        boolean hasDigit = false;
+        for (int i = 0; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (c >= '0' && c <= '9') {
+                hasDigit = true;
+            } else if (" -.()+".indexOf(c) < 0) {
+                return TextNormalizer.fold(trimmed);
+            }
+        }
+        return hasDigit ? TextNormalizer.digitsOnly(trimmed) : TextNormalizer.fold(trimmed);
+    }
+}
@@ -0,0 +1,174 @@
+package utils;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Theo dõi thư mục dữ liệu bằng WatchService để service biết khi nào file của mình thật sự đổi:
+// mỗi lần đọc chỉ cần xem một cờ trong bộ nhớ, không phải hỏi thời gian sửa/kích thước/số thế hệ của file.
+// Có sự kiện trên file (hoặc trên file .lock đi kèm, nơi giữ số thế hệ) thì cờ bật lên và lần đọc sau
+// mới so file thật. Sự kiện có thể bị mất (tràn hàng đợi sự kiện, ổ mạng không báo thay đổi từ máy khác)
+// nên dù không có sự kiện, file vẫn được so lại sau tối đa MAX_UNCHECKED_MILLIS.
+public class DataWatcher {
+    private static final long MAX_UNCHECKED_MILLIS = 2_000;
+    private static final String LOCK_SUFFIX = ".lock";
+    private static final DataWatcher SHARED = new DataWatcher();
+
+    // null khi hệ thống không hỗ trợ theo dõi: mọi lần đọc đều so file như trước
+    private final WatchService service;
+    private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+    private final Map<Path, List<Watch>> watches = new ConcurrentHashMap<>();
+
+    private DataWatcher() {
+        this.service = newWatchService();
+        if (service != null) {
+            Thread thread = new Thread(this::run, "data-watcher");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private static WatchService newWatchService() {
+        try {
+            return FileSystems.getDefault().newWatchService();
+        } catch (IOException | UnsupportedOperationException e) {
+            System.err.println("Khong the theo doi thu muc du lieu: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public static DataWatcher shared() {
+        return SHARED;
+    }
+
+    // Đăng ký theo dõi một file; mỗi nơi gọi có cờ riêng nên một service kiểm tra xong không làm mất
+    // thông báo của service khác cùng đọc file đó. Gọi close() trên Watch khi không dùng nữa
+    public Watch watch(Path file) {
+        Path path = file.toAbsolutePath().normalize();
+        Watch watch = new Watch(this, path, service != null && register(path.getParent()));
+        watches.computeIfAbsent(path, key -> new CopyOnWriteArrayList<>()).add(watch);
+        return watch;
+    }
+
+    private void unwatch(Watch watch) {
+        watches.computeIfPresent(watch.path, (key, list) -> {
+            list.remove(watch);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    private synchronized boolean register(Path directory) {
+        if (directories.containsValue(directory)) {
+            return true;
+        }
+        if (!Files.isDirectory(directory)) {
+            // Thư mục chưa được tạo (ví dụ invoices/ trước lần ghi hóa đơn đầu tiên): so file ở mỗi lần đọc
+            return false;
+        }
+        try {
+            WatchKey key = directory.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            directories.put(key, directory);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Khong the theo doi thu muc " + directory + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void run() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path directory = directories.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    // Mất sự kiện: không biết file nào đổi nên coi như mọi file đều có thể đã đổi
+                    watches.values().forEach(list -> list.forEach(Watch::markStale));
+                    continue;
+                }
+                if (directory != null && event.context() instanceof Path) {
+                    markStale(directory.resolve(dataFileName((Path) event.context())));
+                }
+            }
+            if (!key.reset()) {
+                // Thư mục bị xóa hoặc không còn theo dõi được: quay về so file ở mỗi lần đọc
+                directories.remove(key);
+                watches.forEach((path, list) -> {
+                    if (path.getParent().equals(directory)) {
+                        list.forEach(Watch::disable);
+                    }
+                });
+            }
+        }
+    }
+
+    private void markStale(Path path) {
+        List<Watch> list = watches.get(path);
+        if (list != null) {
+            list.forEach(Watch::markStale);
+        }
+    }
+
+    // "customers.txt.lock" là file đi kèm của "customers.txt"
+    private static String dataFileName(Path name) {
+        String text = name.toString();
+        return text.endsWith(LOCK_SUFFIX) ? text.substring(0, text.length() - LOCK_SUFFIX.length()) : text;
+    }
+
+    public static class Watch implements AutoCloseable {
+        private final DataWatcher owner;
+        private final Path path;
+        private volatile boolean active;
+        private volatile boolean stale = true;
+        private volatile long checkedAt = 0;
+
+        Watch(DataWatcher owner, Path path, boolean active) {
+            this.owner = owner;
+            this.path = path;
+            this.active = active;
+        }
+
+        // true khi cần so lại file: có sự kiện thay đổi, không theo dõi được, hoặc đã lâu chưa so
+        public boolean needsCheck() {
+            return !active || stale || System.currentTimeMillis() - checkedAt > MAX_UNCHECKED_MILLIS;
+        }
+
+        // Gọi ngay trước khi so file: sự kiện đến trong lúc so sẽ bật cờ lại cho lần sau
+        public void checked() {
+            stale = false;
+            checkedAt = System.currentTimeMillis();
+        }
+
+        // Bắt lần kiểm tra sau phải so file thật: khi vừa so thấy file đổi mà chưa load lại,
+        // hoặc khi cần chắc chắn dữ liệu mới nhất (sự kiện có thể đến trễ)
+        public void markStale() {
+            stale = true;
+        }
+
+        // Thôi theo dõi; sau đó needsCheck luôn true
+        @Override
+        public void close() {
+            active = false;
+            owner.unwatch(this);
+        }
+
+        private void disable() {
+            active = false;
+        }
+    }
+}
@@ -9,11 +9,23 @@ import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 import java.text.SimpleDateFormat;
 
+// Mỗi file có một khóa đọc/ghi dùng chung cho mọi FileHandler trong tiến trình và cho cả các tiến trình
+// khác dùng chung thư mục dữ liệu (xem ProcessFileLock): nhiều bên đọc song song, ghi thì độc quyền.
+// Mọi thao tác ghi đi qua WriteQueue; ghi đè toàn bộ file luôn ghi ra file tạm rồi đổi tên nguyên tử,
+// nên người đọc không bao giờ thấy file ghi dở.
 public class FileHandler<T> {
-    private String directory = "do-an-oop-lam-lai/data/";
-    private boolean isUpdatingFile = false;
+    private static final ConcurrentHashMap<Path, ProcessFileLock> LOCKS = new ConcurrentHashMap<>();
+    private static final String SEPARATOR = "----------------------------------------";
+
+    // Có thể đổi thư mục dữ liệu bằng -Ddata.dir=... (dùng cho benchmark và dữ liệu thử)
+    private String directory = System.getProperty("data.dir", "do-an-oop-lam-lai/data/");
     private CustomerService customerService;
     private EmployeeService employeeService;
     private ProductService productService;
@@ -30,62 +42,100 @@ public class FileHandler<T> {
         } 
     }
 
-    public void setUpdatingFile(boolean updating) {
-        this.isUpdatingFile = updating;
+    // Khóa của file, dùng chung cho mọi cách gọi tới cùng một đường dẫn
+    public static ProcessFileLock lockFor(Path path) {
+        return processLock(path);
+    }
+
+    // Số thế hệ của file: tăng mỗi khi một tiến trình bất kỳ ghi file qua khóa của nó
+    public static long generation(Path path) {
+        try {
+            return processLock(path).generation();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    // Tăng số thế hệ sau khi ghi; phải đang giữ khóa ghi của file
+    public static long nextGeneration(Path path) throws IOException {
+        return processLock(path).nextGeneration();
+    }
+
+    private static ProcessFileLock processLock(Path path) {
+        return LOCKS.computeIfAbsent(path.toAbsolutePath().normalize(), ProcessFileLock::new);
+    }
+
+    public long getGeneration(String filename) {
+        return generation(Paths.get(directory + filename));
     }
 
     public String getDirectory() {
         return directory;
     }
 
-    public void saveToFile(String filename, List<T> data) {
+    // Trả về -1 nếu file không tồn tại hoặc không đọc được thuộc tính
+    public long getLastModified(String filename) {
         try {
             Path path = Paths.get(directory + filename);
-            List<String> lines = new ArrayList<>();
-            
-            // Nếu đang cập nhật toàn bộ file
-            if (isUpdatingFile) {
-                // Thêm header cho file mới
-                lines.add("===== DANH SACH " + getHeaderType(filename) + " =====");
-                
-                // Thêm tất cả dữ liệu
-                for (T item : data) {
-                    lines.add("----------------------------------------");
-                    if (item instanceof Printable) {
-                        lines.add(((Printable) item).getInfo());
-                    }
-                }
-                
-                // Ghi đè toàn bộ file
-                Files.write(path, lines, StandardCharsets.UTF_8);
-            } else {
-                // Chế độ thêm mới (append)
-                if (!Files.exists(path)) {
-                    // Tạo file mới với header nếu chưa tồn tại
-                    lines.add("===== DANH SACH " + getHeaderType(filename) + " =====");
-                    Files.write(path, lines, StandardCharsets.UTF_8);
-                }
-                
-                // Đọc nội dung hiện tại của file
-                lines = Files.readAllLines(path, StandardCharsets.UTF_8);
-                
-                // Thêm dữ liệu mới vào cuối
-                for (T item : data) {
-                    lines.add("----------------------------------------");
-                    if (item instanceof Printable) {
-                        lines.add(((Printable) item).getInfo());
-                    }
-                }
-                
-                // Ghi lại toàn bộ nội dung vào file
-                Files.write(path, lines, StandardCharsets.UTF_8);
-            }
+            return Files.exists(path) ? Files.getLastModifiedTime(path).to(TimeUnit.NANOSECONDS) : -1;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    public long getFileSize(String filename) {
+        try {
+            Path path = Paths.get(directory + filename);
+            return Files.exists(path) ? Files.size(path) : -1;
         } catch (IOException e) {
-            System.err.println("Loi khi luu file: " + e.getMessage());
+            return -1;
         }
     }
 
-    private String getHeaderType(String filename) {
+    // Ghi thêm các phần tử vào cuối file (tạo file kèm header nếu chưa có), không đọc lại nội dung cũ.
+    // Việc ghi do luồng ghi của WriteQueue thực hiện; future hoàn tất khi dữ liệu đã xuống đĩa
+    public CompletableFuture<Void> appendToFile(String filename, List<T> data) {
+        return reportErrors(WriteQueue.shared().append(Paths.get(directory + filename),
+            formatHeader(filename), formatItems(data)), "Loi khi luu file: ");
+    }
+
+    // Ghi đè toàn bộ file bằng danh sách data. Các dòng được tạo ngay trên luồng gọi,
+    // nên data có thể tiếp tục bị sửa sau khi gọi
+    public CompletableFuture<Void> replaceFile(String filename, List<T> data) {
+        List<String> lines = new ArrayList<>();
+        lines.add(formatHeader(filename));
+        lines.addAll(formatItems(data));
+        return reportErrors(WriteQueue.shared().replace(Paths.get(directory + filename), lines),
+            "Loi khi luu file: ");
+    }
+
+    // Đọc, sửa và ghi lại file trong cùng một lần giữ khóa ghi, để không mất thay đổi của luồng khác.
+    // Chờ tới khi ghi xong; ngoại lệ của update được ném lại cho nơi gọi
+    public void updateLines(String filename, UnaryOperator<List<String>> update) throws IOException {
+        WriteQueue.await(WriteQueue.shared().update(Paths.get(directory + filename), update));
+    }
+
+    private List<String> formatItems(List<T> data) {
+        List<String> lines = new ArrayList<>();
+        for (T item : data) {
+            lines.add(SEPARATOR);
+            if (item instanceof Printable) {
+                lines.add(((Printable) item).getInfo());
+            }
+        }
+        return lines;
+    }
+
+    private static CompletableFuture<Void> reportErrors(CompletableFuture<Void> write, String message) {
+        write.whenComplete((result, error) -> {
+            if (error != null) {
+                System.err.println(message + error.getMessage());
+            }
+        });
+        return write;
+    }
+
+    private static String getHeaderType(String filename) {
         if (filename.contains("customer")) return "CUSTOMER";
         if (filename.contains("product")) return "SAN PHAM";
         if (filename.contains("employee")) return "NHAN VIEN";
@@ -93,70 +143,64 @@ public class FileHandler<T> {
         return "";
     }
 
-    public void saveInvoiceToText(Invoice invoice, String filename) {
-        try {
-            Path path = Paths.get(directory + filename);
-            List<String> lines = new ArrayList<>();
-            
-            // Nếu file chưa tồn tại, tạo header
-            if (!Files.exists(path)) {
-                lines.add("===== HOA DON BAN HANG =====");
-            } else {
-                // Nếu file đã tồn tại, đọc toàn bộ nội dung cũ
-                lines = Files.readAllLines(path, StandardCharsets.UTF_8);
-            }
-            
-            // Thêm hóa đơn mới vào cuối với format mới
-            lines.add("----------------------------------------");
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-            lines.add(String.format("Invoice [ID: %s, Date: %s]", 
-                invoice.getId(),
-                sdf.format(invoice.getDate())));
-            lines.add("----------------------------------------");
-            
-            // Thông tin khách hàng
-            lines.add(String.format("Khach hang: %s - %s", 
-                invoice.getCustomer().getId(),
-                invoice.getCustomer().getName()));
-            lines.add("----------------------------------------");
-            
-            // Thông tin nhân viên
-            lines.add(String.format("Nhan vien: %s - %s", 
-                invoice.getEmployee().getId(),
-                invoice.getEmployee().getName()));
-            lines.add("----------------------------------------");
-            
-            // Chi tiết sản phẩm
-            lines.add("Chi tiet san pham:");
-            lines.add("----------------------------------------");
-            
-            for (Invoice.InvoiceDetail detail : invoice.getItems()) {
-                lines.add(String.format("- %s (Ma: %s) x%d: %,.0f VND", 
-                    detail.getProduct().getName(),
-                    detail.getProduct().getId(),
-                    detail.getQuantity(),
-                    detail.getProduct().getPrice() * detail.getQuantity()));
-                lines.add("----------------------------------------");
-            }
-            
-            // Tổng tiền
-            lines.add(String.format("Tong tien: %,.0f VND", invoice.getTotalAmount()));
+    public CompletableFuture<Void> saveInvoiceToText(Invoice invoice, String filename) {
+        // Chỉ ghi nối hóa đơn mới vào cuối file, không đọc lại và ghi đè lịch sử cũ
+        return reportErrors(WriteQueue.shared().append(Paths.get(directory + filename),
+            "===== HOA DON BAN HANG =====", formatInvoice(invoice)), "Loi khi luu hoa don: ");
+    }
+
+    // Các dòng của một hóa đơn đúng như trong invoices.txt (không gồm header của file)
+    public static List<String> formatInvoice(Invoice invoice) {
+        List<String> lines = new ArrayList<>();
+        lines.add("----------------------------------------");
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        lines.add(String.format("Invoice [ID: %s, Date: %s]", 
+            invoice.getId(),
+            sdf.format(invoice.getDate())));
+        lines.add("----------------------------------------");
+        
+        // Thông tin khách hàng
+        lines.add(String.format("Khach hang: %s - %s", 
+            invoice.getCustomer().getId(),
+            invoice.getCustomer().getName()));
+        lines.add("----------------------------------------");
+        
+        // Thông tin nhân viên
+        lines.add(String.format("Nhan vien: %s - %s", 
+            invoice.getEmployee().getId(),
+            invoice.getEmployee().getName()));
+        lines.add("----------------------------------------");
+        
+        // Chi tiết sản phẩm
+        lines.add("Chi tiet san pham:");
+        lines.add("----------------------------------------");
+        
+        for (Invoice.InvoiceDetail detail : invoice.getItems()) {
+            lines.add(String.format("- %s (Ma: %s) x%d: %,.0f VND", 
+                detail.getProduct().getName(),
+                detail.getProduct().getId(),
+                detail.getQuantity(),
+                detail.getProduct().getPrice() * detail.getQuantity()));
             lines.add("----------------------------------------");
-            
-            // Ghi toàn bộ nội dung vào file
-            Files.write(path, lines, StandardCharsets.UTF_8);
-                
-        } catch (IOException e) {
-            System.err.println("Loi khi luu hoa don: " + e.getMessage());
         }
+        
+        // Tổng tiền
+        lines.add(String.format("Tong tien: %,.0f VND", invoice.getTotalAmount()));
+        lines.add("----------------------------------------");
+        return lines;
+    }
+
+    // Dòng tiêu đề của file danh sách (customers.txt, products.txt, employees.txt)
+    public static String formatHeader(String filename) {
+        return "===== DANH SACH " + getHeaderType(filename) + " =====";
     }
 
     public void readTextFile(String filename) {
         try {
-            List<String> lines = readAllLines(filename);
-            for (String line : lines) {
+            forEachLine(filename, line -> {
                 System.out.println(line);
-            }
+                return true;
+            });
         } catch (IOException e) {
             System.err.println("Lỗi khi đọc file: " + e.getMessage());
         }
@@ -165,153 +209,100 @@ public class FileHandler<T> {
     @SuppressWarnings("unchecked")
     public List<T> loadFromFile(String filename) {
         List<T> items = new ArrayList<>();
+        RecordParser parser = new RecordParser();
         try {
-            List<String> lines = readAllLines(filename);
-            
-            for (String line : lines) {
+            forEachLine(filename, line -> {
                 if (line.trim().isEmpty() || line.startsWith("===") || line.startsWith("---")) {
-                    continue;
+                    return true;
                 }
                 // Parsing logic for different types
                 if (line.contains("Computer [")) {
-                    T item = (T) parseComputer(line);
+                    T item = (T) parser.parseComputer(line);
                     if (item != null) {
                         items.add(item);
                     }
                 } else if (line.contains("Accessory [")) {
-                    T item = (T) parseAccessory(line);
+                    T item = (T) parser.parseAccessory(line);
                     if (item != null) {
                         items.add(item);
                     }
                 } else if (line.contains("Customer [")) {
-                    T item = (T) parseCustomer(line);
+                    T item = (T) parser.parseCustomer(line);
                     if (item != null) items.add(item);
                 } else if (line.contains("Employee [")) {
-                    T item = (T) parseEmployee(line);
+                    T item = (T) parser.parseEmployee(line);
                     if (item != null) items.add(item);
                 }
-            }
+                return true;
+            });
         } catch (IOException e) {
             System.err.println("Lỗi khi đọc file: " + e.getMessage());
         }
         return items;
     }
 
-    private Computer parseComputer(String line) {
-        try {
-            Map<String, String> data = extractData(line);
-            return new Computer(
-                data.getOrDefault("ID", "").trim(),
-                data.getOrDefault("Name", "").trim(),
-                Double.parseDouble(data.getOrDefault("Price", "0").trim().replace(",", "")),
-                Integer.parseInt(data.getOrDefault("Quantity", "0").trim()),
-                data.getOrDefault("CPU", "").trim(),
-                data.getOrDefault("RAM", "").trim(),
-                data.getOrDefault("Hard Drive", "").trim()
-            );
-        } catch (Exception e) {
-            System.err.println("Lỗi khi parse Computer: " + e.getMessage());
-            return null;
-        }
-    }
-
-    private Accessory parseAccessory(String line) {
-        try {
-            Map<String, String> data = extractData(line);
-            return new Accessory(
-                data.getOrDefault("ID", "").trim(),
-                data.getOrDefault("Name", "").trim(),
-                Double.parseDouble(data.getOrDefault("Price", "0").trim().replace(",", "")),
-                Integer.parseInt(data.getOrDefault("Quantity", "0").trim()),
-                data.getOrDefault("Type", "").trim()
-            );
-        } catch (Exception e) {
-            System.err.println("Lỗi khi parse Accessory: " + e.getMessage());
-            return null;
-        }
-    }
-
-   
-
-    private Map<String, String> extractData(String line) {
-        Map<String, String> data = new LinkedHashMap<>();
-        try {
-            String content = line.substring(line.indexOf("[") + 1, line.lastIndexOf("]"));
-            String[] pairs = content.split(",(?=\\s*(?!Basic Salary:)[A-Za-z]+:)");
-            
-            for (String pair : pairs) {
-                String[] keyValue = pair.split(":", 2);
-                if (keyValue.length == 2) {
-                    String key = keyValue[0].trim();
-                    String value = keyValue[1].trim();
-                    
-                    if (!key.equals("Basic Salary") || !data.containsKey(key)) {
-                        data.put(key, value);
-                    }
-                }
-            }
-        } catch (Exception e) {
-            System.err.println("Lỗi khi extract data: " + e.getMessage());
+    public CompletableFuture<Void> writeFormattedText(String filename, String header, List<String> contentLines) {
+        List<String> lines = new ArrayList<>();
+        for (String content : contentLines) {
+            lines.add(SEPARATOR);
+            lines.add(content);
         }
-        return data;
+        lines.add(SEPARATOR);
+        return reportErrors(WriteQueue.shared().append(Paths.get(directory + filename), header, lines),
+            "Loi khi ghi file: ");
     }
 
-    public void writeFormattedText(String filename, String header, List<String> contentLines) {
+    // Đọc file lần lượt từng dòng, không giữ toàn bộ nội dung trong bộ nhớ.
+    // action trả về false để dừng đọc sớm
+    public void forEachLine(String filename, Predicate<String> action) throws IOException {
+        Path path = Paths.get(directory + filename);
+        ProcessFileLock.Hold hold = lockFor(path).lockShared();
         try {
-            Path path = Paths.get(directory + filename);
-            List<String> lines = new ArrayList<>();
-            
-            // Nếu file không tồn tại, tạo mới với header
             if (!Files.exists(path)) {
-                lines.add(header);
-            } else {
-                // Nếu file đã tồn tại, đọc nội dung cũ
-                lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+                return;
             }
-            
-            // Thêm nội dung mới vào cuối
-            for (String content : contentLines) {
-                lines.add("----------------------------------------");
-                lines.add(content);
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!action.test(line)) {
+                        break;
+                    }
+                }
             }
-            lines.add("----------------------------------------");
-            
-            // Ghi toàn bộ nội dung vào file
-            Files.write(path, lines, StandardCharsets.UTF_8);
-        } catch (IOException e) {
-            System.err.println("Loi khi ghi file: " + e.getMessage());
+        } finally {
+            hold.close();
         }
     }
 
     public List<String> readAllLines(String filename) throws IOException {
         Path path = Paths.get(directory + filename);
-        if (Files.exists(path)) {
-            return Files.readAllLines(path, StandardCharsets.UTF_8);
+        ProcessFileLock.Hold hold = lockFor(path).lockShared();
+        try {
+            if (Files.exists(path)) {
+                return Files.readAllLines(path, StandardCharsets.UTF_8);
+            }
+            return new ArrayList<>();
+        } finally {
+            hold.close();
         }
-        return new ArrayList<>();
     }
 
     public void updateInvoiceFormat(String filename) {
+        if (!Files.exists(Paths.get(directory + filename))) {
+            return;
+        }
         try {
-            Path path = Paths.get(directory + filename);
-            if (!Files.exists(path)) {
-                return;
-            }
-
-            List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
-            List<String> updatedLines = new ArrayList<>();
-
-            for (String line : lines) {
-                if (line.contains("đ")) {
-                    // Thay thế "đ" bằng " VND" cho các dòng có giá tiền
-                    line = line.replace("đ", " VND");
+            updateLines(filename, lines -> {
+                List<String> updatedLines = new ArrayList<>();
+                for (String line : lines) {
+                    if (line.contains("đ")) {
+                        // Thay thế "đ" bằng " VND" cho các dòng có giá tiền
+                        line = line.replace("đ", " VND");
+                    }
+                    updatedLines.add(line);
                 }
-                updatedLines.add(line);
-            }
-
-            // Ghi lại file với nội dung đã cập nhật
-            Files.write(path, updatedLines, StandardCharsets.UTF_8);
-            
+                return updatedLines;
+            });
         } catch (IOException e) {
             System.err.println("Lỗi khi cập nhật file hóa đơn: " + e.getMessage());
         }
@@ -323,143 +314,21 @@ public class FileHandler<T> {
         this.productService = productService;
     }
 
-    private Customer parseCustomer(String line) {
-        try {
-            Map<String, String> data = extractData(line);
-            String id = data.getOrDefault("ID", "").trim();
-            String name = data.getOrDefault("Name", "").trim();
-            String address = data.getOrDefault("Address", "").trim();
-            String phone = data.getOrDefault("Phone", "").trim();
-            
-            // Kiểm tra nếu phone chứa chữ và address chứa số, đổi chỗ cho nhau
-            if (phone.matches(".*[a-zA-Z].*") && address.matches("\\d+")) {
-                String temp = phone;
-                phone = address;
-                address = temp;
-            }
-            
-            return new Customer(id, name, address, phone);
-        } catch (Exception e) {
-            System.err.println("Lỗi khi parse Customer: " + e.getMessage());
-            return null;
-        }
-    }
-
-    private Employee parseEmployee(String line) {
-        try {
-            Map<String, String> data = extractData(line);
-            String basicSalaryStr = data.getOrDefault("Basic Salary", "0").trim();
-            // Loại bỏ dấu phẩy và chuyển đổi sang double
-            double basicSalary = Double.parseDouble(basicSalaryStr.replace(",", ""));
-            
-            Employee employee = new Employee(
-                data.getOrDefault("ID", "").trim(),
-                data.getOrDefault("Name", "").trim(),
-                data.getOrDefault("Phone", "").trim(),
-                data.getOrDefault("Address", "").trim(),
-                data.getOrDefault("Position", "").trim(),
-                basicSalary
-            );
-            return employee;
-        } catch (Exception e) {
-            System.err.println("Lỗi khi parse Employee: " + e.getMessage());
-            e.printStackTrace(); // Thêm dòng này để debug
-            return null;
-        }
-    }
-
     public List<Invoice> loadInvoicesFromFile(String filename) {
         List<Invoice> invoices = new ArrayList<>();
+        Path path = Paths.get(directory + filename);
+        ProcessFileLock.Hold hold = lockFor(path).lockShared();
         try {
-            List<String> lines = readAllLines(filename);
-            Invoice currentInvoice = null;
-            Customer customer = null;
-            Employee employee = null;
-            List<Invoice.InvoiceDetail> items = new ArrayList<>();
-            
-            for (String line : lines) {
-                line = line.trim();
-                if (line.isEmpty() || line.startsWith("=====") || line.equals("----------------------------------------")) {
-                    continue;
-                }
-
-                if (line.startsWith("Invoice [ID:")) {
-                    // Lưu hóa đơn trước đó nếu có đầy đủ thông tin
-                    if (currentInvoice != null && customer != null && employee != null) {
-                        currentInvoice.setCustomer(customer);
-                        currentInvoice.setEmployee(employee);
-                        currentInvoice.setItems(new ArrayList<>(items));
-                        invoices.add(currentInvoice);
-                    }
-                    
-                    // Parse thông tin hóa đơn mới
-                    String id = line.substring(line.indexOf("ID:") + 4, line.indexOf(",")).trim();
-                    String dateStr = line.substring(line.indexOf("Date:") + 6, line.indexOf("]")).trim();
-                    SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-                    Date date = sdf.parse(dateStr);
-                    
-                    currentInvoice = new Invoice(id, date);
-                    items = new ArrayList<>(); // Reset items list
-                } else if (line.startsWith("Khach hang:")) {
-                    try {
-                        String[] parts = line.substring("Khach hang:".length()).trim().split("-", 2);
-                        String customerId = parts[0].trim();
-                        customer = customerService.findById(customerId)
-                            .orElseThrow(() -> new RuntimeException("Không tìm thấy khách hàng: " + customerId));
-                    } catch (Exception e) {
-                        System.err.println("Lỗi khi xử lý thông tin khách hàng: " + e.getMessage());
-                        customer = null; // Reset customer nếu có lỗi
-                    }
-                } else if (line.startsWith("Nhan vien:")) {
-                    try {
-                        String[] parts = line.substring("Nhan vien:".length()).trim().split("-", 2);
-                        String employeeId = parts[0].trim();
-                        employee = employeeService.findById(employeeId)
-                            .orElseThrow(() -> new RuntimeException("Không tìm thấy nhân viên: " + employeeId));
-                    } catch (Exception e) {
-                        System.err.println("Lỗi khi xử lý thông tin nhân viên: " + e.getMessage());
-                        employee = null; // Reset employee nếu có lỗi
-                    }
-                } else if (line.startsWith("-") && line.contains("(Ma:") && line.contains("x")) {
-                    try {
-                        // Parse chi tiết sản phẩm
-                        String productInfo = line.substring(1).trim();
-                        int maIndex = productInfo.indexOf("(Ma:");
-                        int closeParenIndex = productInfo.indexOf(")", maIndex);
-                        int xIndex = productInfo.indexOf("x", closeParenIndex);
-                        
-                        // Lấy tên sản phẩm
-                       // String productName = productInfo.substring(0, maIndex).trim();
-                        // Lấy mã sản phẩm
-                        String productId = productInfo.substring(maIndex + 4, closeParenIndex).trim();
-                        // Lấy số lượng
-                        String quantityStr = productInfo.substring(xIndex + 1, productInfo.indexOf(":")).trim();
-                        int quantity = Integer.parseInt(quantityStr);
-                        
-                        // Tìm sản phẩm trong service
-                        Product product = productService.findById(productId)
-                            .orElseThrow(() -> new RuntimeException("Không tìm thấy sản phẩm: " + productId));
-                        
-                        if (currentInvoice != null) {
-                            items.add(new Invoice.InvoiceDetail(product, quantity));
-                        }
-                    } catch (Exception e) {
-                        System.err.println("Lỗi khi xử lý chi tiết sản phẩm: " + e.getMessage());
-                    }
-                }
-            }
-            
-            // Xử lý hóa đơn cuối cùng
-            if (currentInvoice != null && customer != null && employee != null) {
-                currentInvoice.setCustomer(customer);
-                currentInvoice.setEmployee(employee);
-                currentInvoice.setItems(new ArrayList<>(items));
-                invoices.add(currentInvoice);
-            }
-            
+            invoices = new ParallelInvoiceLoader(
+                InvoiceParser.withLookupTables(customerService, employeeService, productService))
+                .load(path);
+            // Chỉ giữ các hóa đơn có đầy đủ thông tin khách hàng và nhân viên
+            invoices.removeIf(invoice -> invoice.getCustomer() == null || invoice.getEmployee() == null);
         } catch (Exception e) {
             System.err.println("Lỗi khi đọc file hóa đơn: " + e.getMessage());
             e.printStackTrace();
+        } finally {
+            hold.close();
         }
         return invoices;
     }
@@ -0,0 +1,282 @@
+package utils;
+
+import interfaces.SystemInterfaces.ByteSource;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Bản lưu trữ nén của một phân vùng hóa đơn đã chốt. Dữ liệu giải nén giống hệt file văn bản gốc
+// nên offset trong chỉ mục (.idx) và chữ ký trong thống kê (.stats) vẫn dùng được nguyên vẹn.
+// Cấu trúc: [MAGIC][các khối Deflate][bảng khối][vị trí bảng khối][MAGIC]. Mỗi khối chứa khoảng
+// 64 KB văn bản và (trừ khối đầu) bắt đầu tại một dòng "Invoice [", nên đọc một hóa đơn chỉ cần
+// giải nén một khối và các khối có thể được parse song song độc lập với nhau.
+public class InvoiceArchive implements ByteSource {
+    private static final int MAGIC = 0x49415243; // "IARC"
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES;
+
+    private final Path path;
+    // Theo từng khối: vị trí trong dữ liệu gốc, vị trí và độ dài phần nén trong file, độ dài gốc
+    private final long[] blockStarts;
+    private final long[] blockOffsets;
+    private final int[] compressedLengths;
+    private final int[] blockLengths;
+    private final long size;
+    // Khối giải nén gần nhất, vì các bản ghi được đọc liền nhau thường nằm cùng một khối
+    private int cachedBlock = -1;
+    private byte[] cachedBytes;
+
+    public InvoiceArchive(Path path) throws IOException {
+        this.path = path;
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
+            if (file.length() < Integer.BYTES + TRAILER_SIZE || file.readInt() != MAGIC) {
+                throw new IOException("File luu tru hoa don khong dung dinh dang: " + path);
+            }
+            file.seek(file.length() - TRAILER_SIZE);
+            long indexOffset = file.readLong();
+            if (file.readInt() != MAGIC) {
+                throw new IOException("File luu tru hoa don bi ghi do: " + path);
+            }
+            file.seek(indexOffset);
+            int count = file.readInt();
+            blockStarts = new long[count];
+            blockOffsets = new long[count];
+            compressedLengths = new int[count];
+            blockLengths = new int[count];
+            long total = 0;
+            for (int i = 0; i < count; i++) {
+                blockStarts[i] = total;
+                blockOffsets[i] = file.readLong();
+                compressedLengths[i] = file.readInt();
+                blockLengths[i] = file.readInt();
+                total += blockLengths[i];
+            }
+            size = total;
+        }
+    }
+
+    // Nén file văn bản source thành bản lưu trữ target (ghi ra file tạm rồi đổi tên)
+    public static void write(Path source, Path target) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(source), BLOCK_SIZE);
+             DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(temp), BLOCK_SIZE))) {
+            out.writeInt(MAGIC);
+            List<int[]> blocks = new ArrayList<>();
+            ByteArrayOutputStream block = new ByteArrayOutputStream(BLOCK_SIZE + 1024);
+            ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+            byte[] buffer = new byte[BLOCK_SIZE];
+
+            while (readLine(in, line)) {
+                // Chỉ cắt khối ngay trước một hóa đơn để mỗi khối tự parse được
+                if (block.size() >= BLOCK_SIZE
+                        && line.toString(StandardCharsets.UTF_8).contains("Invoice [")) {
+                    blocks.add(writeBlock(out, deflater, block, buffer));
+                    block.reset();
+                }
+                line.writeTo(block);
+            }
+            if (block.size() > 0) {
+                blocks.add(writeBlock(out, deflater, block, buffer));
+            }
+
+            long indexOffset = out.size();
+            long offset = Integer.BYTES;
+            out.writeInt(blocks.size());
+            for (int[] entry : blocks) {
+                out.writeLong(offset);
+                out.writeInt(entry[0]);
+                out.writeInt(entry[1]);
+                offset += entry[0];
+            }
+            out.writeLong(indexOffset);
+            out.writeInt(MAGIC);
+        } finally {
+            deflater.end();
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Giải nén lại thành file văn bản, dùng khi phải ghi thêm vào một tháng đã lưu trữ
+    public void extractTo(Path target) throws IOException {
+        try (InputStream in = openFrom(0)) {
+            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public int blockCount() {
+        return blockLengths.length;
+    }
+
+    public byte[] readBlock(int block) throws IOException {
+        ByteBuffer compressed = ByteBuffer.allocate(compressedLengths[block]);
+        // Đọc theo vị trí qua FileChannel nên nhiều luồng có thể đọc các khối khác nhau cùng lúc
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (compressed.hasRemaining()) {
+                if (channel.read(compressed, blockOffsets[block] + compressed.position()) < 0) {
+                    throw new IOException("File luu tru hoa don bi cat ngan: " + path);
+                }
+            }
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed.array());
+            byte[] bytes = new byte[blockLengths[block]];
+            int length = 0;
+            while (length < bytes.length && !inflater.finished()) {
+                int inflated = inflater.inflate(bytes, length, bytes.length - length);
+                if (inflated == 0 && inflater.needsInput()) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != bytes.length) {
+                throw new IOException("Khoi du lieu nen bi hong: " + path);
+            }
+            return bytes;
+        } catch (DataFormatException e) {
+            throw new IOException("Khoi du lieu nen bi hong: " + path, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public InputStream openFrom(long offset) {
+        return new BlockInputStream(offset);
+    }
+
+    @Override
+    public byte[] read(long offset, int length) throws IOException {
+        if (offset < 0 || offset + length > size) {
+            throw new IOException("Vi tri doc vuot qua du lieu luu tru: " + offset);
+        }
+        byte[] result = new byte[length];
+        int copied = 0;
+        int block = blockAt(offset);
+        while (copied < length) {
+            byte[] bytes = cachedBlock(block);
+            int from = (int) (offset + copied - blockStarts[block]);
+            int count = Math.min(bytes.length - from, length - copied);
+            System.arraycopy(bytes, from, result, copied, count);
+            copied += count;
+            block++;
+        }
+        return result;
+    }
+
+    private synchronized byte[] cachedBlock(int block) throws IOException {
+        if (block != cachedBlock) {
+            cachedBytes = readBlock(block);
+            cachedBlock = block;
+        }
+        return cachedBytes;
+    }
+
+    // Khối chứa vị trí offset của dữ liệu gốc
+    private int blockAt(long offset) {
+        int pos = Arrays.binarySearch(blockStarts, offset);
+        return pos >= 0 ? pos : -pos - 2;
+    }
+
+    // Đọc một dòng kể cả ký tự xuống dòng để dữ liệu giải nén giữ nguyên từng byte
+    private static boolean readLine(InputStream in, ByteArrayOutputStream line) throws IOException {
+        line.reset();
+        int b;
+        while ((b = in.read()) != -1) {
+            line.write(b);
+            if (b == '\n') {
+                break;
+            }
+        }
+        return line.size() > 0;
+    }
+
+    // Trả về {độ dài nén, độ dài gốc}
+    private static int[] writeBlock(DataOutputStream out, Deflater deflater, ByteArrayOutputStream block,
+                                    byte[] buffer) throws IOException {
+        deflater.reset();
+        deflater.setInput(block.toByteArray());
+        deflater.finish();
+        int compressed = 0;
+        while (!deflater.finished()) {
+            int length = deflater.deflate(buffer);
+            out.write(buffer, 0, length);
+            compressed += length;
+        }
+        return new int[] {compressed, block.size()};
+    }
+
+    // Đọc tuần tự dữ liệu gốc từ một vị trí bất kỳ, giải nén từng khối khi cần
+    private class BlockInputStream extends InputStream {
+        private int block;
+        private byte[] bytes = new byte[0];
+        private int position;
+        // Vị trí bắt đầu đọc trong khối đầu tiên
+        private int skip;
+
+        BlockInputStream(long offset) {
+            block = offset >= size ? blockLengths.length : blockAt(offset);
+            skip = block < blockLengths.length ? (int) (offset - blockStarts[block]) : 0;
+            // Khối đầu tiên chỉ được giải nén ở lần đọc đầu
+            block--;
+        }
+
+        private boolean fill() throws IOException {
+            while (position >= bytes.length) {
+                if (block + 1 >= blockLengths.length) {
+                    return false;
+                }
+                bytes = readBlock(++block);
+                position = skip;
+                skip = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int count = Math.min(length, bytes.length - position);
+            System.arraycopy(bytes, position, target, offset, count);
+            position += count;
+            return count;
+        }
+    }
+}
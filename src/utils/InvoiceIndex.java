@@ -0,0 +1,358 @@
+package utils;
+
+import interfaces.SystemInterfaces.ByteSource;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+// Chỉ mục phụ cho một file hóa đơn: mã hóa đơn -> vị trí byte, độ dài bản ghi và mã khách hàng.
+// Mã hóa đơn chỉ chính xác tới phút nên hai hóa đơn khác nhau có thể trùng mã: mục được phân biệt
+// theo vị trí byte, mỗi mã giữ danh sách các bản ghi của nó. Một bản ghi bắt đầu từ dòng "Invoice [" và kết thúc sau dòng "Tong tien:".
+// File chỉ mục (.idx) gồm phần đầu [MAGIC][số byte đã lập chỉ mục] và các mục ghi nối tiếp;
+// danh sách hóa đơn của từng khách hàng được dựng lại từ các mục này khi nạp.
+// File chỉ mục chỉ được ghi khi giữ khóa ghi của nó (FileHandler.lockFor); nếu tiến trình khác đã ghi
+// (số thế hệ đổi) thì đọc lại file chỉ mục trước khi quét tiếp, không ghi đè mục của tiến trình đó.
+public class InvoiceIndex {
+    private static final int MAGIC = 0x49494432; // "IID2", bản có mã khách hàng trong từng mục
+    private static final int COVERED_OFFSET = Integer.BYTES;
+    private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES;
+
+    private final ByteSource data;
+    private final Path indexPath;
+    // Vị trí byte -> mục, giữ thứ tự xuất hiện trong file
+    private final Map<Long, Entry> entries = new LinkedHashMap<>();
+    // Mã hóa đơn -> các bản ghi mang mã đó theo thứ tự trong file
+    private final Map<String, List<Entry>> byId = new HashMap<>();
+    // Mã khách hàng -> các bản ghi của khách theo thứ tự trong file (cũ trước, mới sau)
+    private final Map<String, List<Entry>> byCustomer = new HashMap<>();
+    private long coveredSize = 0;
+    // Độ dài file chỉ mục tính tới mục cuối cùng có bản ghi trọn vẹn (nằm trước coveredSize).
+    // Mục của bản ghi đang ghi dở nằm sau vị trí này và bị cắt bỏ trước khi ghi lại sau lần quét tới
+    private long verifiedIndexSize = HEADER_SIZE;
+    private boolean loaded = false;
+    // Số thế hệ của file chỉ mục ứng với các mục đang có
+    private long knownGeneration = -1;
+
+    public InvoiceIndex(ByteSource data, Path indexPath) {
+        this.data = data;
+        this.indexPath = indexPath;
+    }
+
+    // Đọc đúng bản ghi của một hóa đơn: một lần seek và một lần đọc.
+    // Nếu nhiều hóa đơn trùng mã thì lấy hóa đơn ghi sau cùng
+    public synchronized Optional<String> readRecord(String id) throws IOException {
+        refresh();
+        List<Entry> posting = byId.get(id);
+        if (posting == null || posting.isEmpty()) {
+            return Optional.empty();
+        }
+        Entry entry = posting.get(posting.size() - 1);
+        return Optional.of(read(entry.offset, entry.length));
+    }
+
+    // Mọi bản ghi mang mã này, theo thứ tự trong file
+    public synchronized List<String> readRecords(String id) throws IOException {
+        refresh();
+        List<String> records = new ArrayList<>();
+        List<Entry> posting = byId.get(id);
+        if (posting != null) {
+            for (Entry entry : posting) {
+                records.add(read(entry.offset, entry.length));
+            }
+        }
+        return records;
+    }
+
+    // Số hóa đơn của một khách hàng (so khớp đúng mã, không phải chuỗi con)
+    public synchronized int countByCustomer(String customerId) throws IOException {
+        refresh();
+        List<Entry> posting = byCustomer.get(customerId);
+        return posting == null ? 0 : posting.size();
+    }
+
+    // Bản ghi hóa đơn của khách hàng, mới nhất trước: bỏ qua skip bản ghi đầu, lấy tối đa limit.
+    // Chỉ đọc đúng các bản ghi của trang
+    public synchronized List<String> readCustomerRecords(String customerId, int skip, int limit) throws IOException {
+        refresh();
+        List<String> records = new ArrayList<>();
+        List<Entry> posting = byCustomer.get(customerId);
+        if (posting == null || skip >= posting.size() || limit <= 0) {
+            return records;
+        }
+        for (int i = posting.size() - 1 - skip; i >= 0 && records.size() < limit; i--) {
+            Entry entry = posting.get(i);
+            records.add(read(entry.offset, entry.length));
+        }
+        return records;
+    }
+
+    // Các mã hóa đơn chứa từ khóa (không phân biệt hoa thường), mỗi mã một lần, theo thứ tự trong file
+    public synchronized List<String> findIds(String keyword) throws IOException {
+        refresh();
+        String upper = keyword.toUpperCase();
+        Set<String> ids = new LinkedHashSet<>();
+        for (Entry entry : entries.values()) {
+            if (entry.id.toUpperCase().contains(upper)) {
+                ids.add(entry.id);
+            }
+        }
+        return new ArrayList<>(ids);
+    }
+
+    // Đồng bộ chỉ mục với file dữ liệu: chỉ quét phần mới được ghi thêm,
+    // dựng lại toàn bộ nếu file bị cắt ngắn hoặc bị ghi đè
+    public synchronized void refresh() throws IOException {
+        if (loaded && data.size() == coveredSize && FileHandler.generation(indexPath) == knownGeneration) {
+            return;
+        }
+        ProcessFileLock.Hold hold = FileHandler.lockFor(indexPath).lockExclusive();
+        try {
+            long generation = FileHandler.generation(indexPath);
+            if (!loaded || generation != knownGeneration) {
+                knownGeneration = generation;
+                loadSidecar();
+                loaded = true;
+            }
+            long size = data.size();
+            if (size == coveredSize) {
+                return;
+            }
+            if (size < coveredSize || !isLastEntryValid()) {
+                rebuild();
+                return;
+            }
+            appendEntries(scanFrom(coveredSize));
+        } finally {
+            hold.close();
+        }
+    }
+
+    public synchronized void rebuild() throws IOException {
+        ProcessFileLock.Hold hold = FileHandler.lockFor(indexPath).lockExclusive();
+        try {
+            entries.clear();
+            byId.clear();
+            byCustomer.clear();
+            coveredSize = 0;
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(indexPath.toFile())))) {
+                out.writeInt(MAGIC);
+                out.writeLong(0);
+            }
+            verifiedIndexSize = HEADER_SIZE;
+            appendEntries(scanFrom(0));
+        } finally {
+            hold.close();
+        }
+    }
+
+    private void loadSidecar() throws IOException {
+        entries.clear();
+        byId.clear();
+        byCustomer.clear();
+        coveredSize = 0;
+        verifiedIndexSize = HEADER_SIZE;
+        if (!Files.exists(indexPath)) {
+            rebuild();
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(indexPath)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("File chi muc hoa don khong dung dinh dang");
+            }
+            coveredSize = in.readLong();
+            long position = HEADER_SIZE;
+            while (true) {
+                String id = in.readUTF();
+                String customerId = in.readUTF();
+                long offset = in.readLong();
+                int length = in.readInt();
+                add(new Entry(id, offset, length, customerId));
+                position += entrySize(id, customerId);
+                if (offset < coveredSize) {
+                    verifiedIndexSize = position;
+                }
+            }
+        } catch (EOFException e) {
+            // Hết file chỉ mục (mục cuối có thể bị ghi dở khi chương trình dừng đột ngột)
+        } catch (IOException e) {
+            rebuild();
+        }
+    }
+
+    // Kiểm tra mục cuối cùng vẫn trỏ đúng vào dòng "Invoice [ID: ..." của nó
+    private boolean isLastEntryValid() throws IOException {
+        Entry last = null;
+        for (Entry entry : entries.values()) {
+            last = entry;
+        }
+        if (last == null) {
+            return true;
+        }
+        String prefix = "Invoice [ID: " + last.id;
+        // So theo byte: mã có ký tự ngoài ASCII dài hơn số ký tự của nó
+        int prefixLength = prefix.getBytes(StandardCharsets.UTF_8).length;
+        if (last.offset + prefixLength > data.size()) {
+            return false;
+        }
+        return read(last.offset, prefixLength).equals(prefix);
+    }
+
+    private String read(long offset, int length) throws IOException {
+        return new String(data.read(offset, length), StandardCharsets.UTF_8);
+    }
+
+    // Quét file dữ liệu từ vị trí start, trả về các mục mới và cập nhật coveredSize
+    private List<Entry> scanFrom(long start) throws IOException {
+        List<Entry> found = new ArrayList<>();
+        if (data.size() == 0) {
+            coveredSize = 0;
+            return found;
+        }
+
+        try (OffsetLineReader reader = new OffsetLineReader(data.openFrom(start), start)) {
+            long lastComplete = start;
+            String currentId = null;
+            String customerId = "";
+            long recordStart = -1;
+
+            String line;
+            while ((line = reader.readLine()) != null && reader.isTerminated()) {
+                String text = line.trim();
+                if (text.startsWith("Invoice [")) {
+                    if (currentId != null) {
+                        found.add(new Entry(currentId, recordStart, reader.lineStart() - recordStart, customerId));
+                    }
+                    currentId = parseId(text);
+                    customerId = "";
+                    recordStart = reader.lineStart();
+                } else if (text.startsWith("Khach hang:") && currentId != null) {
+                    customerId = parseCustomerId(text);
+                } else if (text.startsWith("Tong tien:") && currentId != null) {
+                    found.add(new Entry(currentId, recordStart, reader.position() - recordStart, customerId));
+                    currentId = null;
+                }
+                lastComplete = reader.position();
+            }
+
+            if (currentId != null) {
+                // Bản ghi chưa có dòng tổng tiền: vẫn lập chỉ mục tới cuối file,
+                // nhưng lần refresh sau sẽ quét lại từ đầu bản ghi này
+                found.add(new Entry(currentId, recordStart, reader.position() - recordStart, customerId));
+                coveredSize = recordStart;
+            } else {
+                coveredSize = lastComplete;
+            }
+        }
+        return found;
+    }
+
+    private static String parseId(String line) {
+        int idIndex = line.indexOf("ID:");
+        int commaIndex = line.indexOf(",", idIndex);
+        if (idIndex < 0 || commaIndex < 0) {
+            return "";
+        }
+        return line.substring(idIndex + 3, commaIndex).trim();
+    }
+
+    // "Khach hang: KH001 - Nguyen Van A" -> "KH001"
+    private static String parseCustomerId(String line) {
+        int start = "Khach hang:".length();
+        int dashIndex = line.indexOf(" - ", start);
+        return (dashIndex < 0 ? line.substring(start) : line.substring(start, dashIndex)).trim();
+    }
+
+    private void appendEntries(List<Entry> newEntries) throws IOException {
+        // Bỏ mục của bản ghi ghi dở lần trước: lần quét này đã quét lại bản ghi đó từ đầu
+        try (RandomAccessFile file = new RandomAccessFile(indexPath.toFile(), "rw")) {
+            if (file.length() > verifiedIndexSize) {
+                file.setLength(verifiedIndexSize);
+            }
+        }
+        long position = verifiedIndexSize;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(indexPath.toFile(), true)))) {
+            for (Entry entry : newEntries) {
+                out.writeUTF(entry.id);
+                out.writeUTF(entry.customerId);
+                out.writeLong(entry.offset);
+                out.writeInt(entry.length);
+                position += entrySize(entry.id, entry.customerId);
+                if (entry.offset < coveredSize) {
+                    verifiedIndexSize = position;
+                }
+            }
+        }
+        // Ghi số byte đã lập chỉ mục sau cùng, để nếu bị dừng giữa chừng thì lần sau quét lại phần này
+        try (RandomAccessFile file = new RandomAccessFile(indexPath.toFile(), "rw")) {
+            file.seek(COVERED_OFFSET);
+            file.writeLong(coveredSize);
+        }
+        knownGeneration = FileHandler.nextGeneration(indexPath);
+        newEntries.forEach(this::add);
+    }
+
+    // Số byte một mục chiếm trong file chỉ mục (writeUTF ghi 2 byte độ dài và chuỗi dạng UTF-8 cải biên)
+    private static long entrySize(String id, String customerId) {
+        return utfSize(id) + utfSize(customerId) + Long.BYTES + Integer.BYTES;
+    }
+
+    private static int utfSize(String s) {
+        int size = 2;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            size += (c >= 0x0001 && c <= 0x007F) ? 1 : (c <= 0x07FF ? 2 : 3);
+        }
+        return size;
+    }
+
+    // Mục trùng vị trí (bản ghi ghi dở được quét lại) thay mục cũ trong mọi bảng
+    private void add(Entry entry) {
+        Entry old = entries.put(entry.offset, entry);
+        if (old != null) {
+            remove(byId, old.id, old);
+            remove(byCustomer, old.customerId, old);
+        }
+        byId.computeIfAbsent(entry.id, k -> new ArrayList<>()).add(entry);
+        byCustomer.computeIfAbsent(entry.customerId, k -> new ArrayList<>()).add(entry);
+    }
+
+    private static void remove(Map<String, List<Entry>> postings, String key, Entry entry) {
+        List<Entry> posting = postings.get(key);
+        if (posting != null) {
+            posting.remove(entry);
+        }
+    }
+
+    private static class Entry {
+        private final String id;
+        private final long offset;
+        private final int length;
+        private final String customerId;
+
+        Entry(String id, long offset, long length, String customerId) {
+            this.id = id;
+            this.offset = offset;
+            this.length = (int) length;
+            this.customerId = customerId;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package utils;
+
+import models.Customer;
+import models.Employee;
+import models.Invoice;
+import models.Product;
+import services.CustomerService;
+import services.EmployeeService;
+import services.ProductService;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Dựng hóa đơn từ các dòng của invoices.txt. Nhận từng dòng một nên dùng được khi đọc dạng luồng;
+// mỗi luồng xử lý cần một đối tượng riêng vì parser giữ trạng thái của hóa đơn đang đọc dở
+public class InvoiceParser {
+    private final Function<String, Optional<Customer>> customerLookup;
+    private final Function<String, Optional<Employee>> employeeLookup;
+    private final Function<String, Optional<Product>> productLookup;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    private final List<Invoice> invoices = new ArrayList<>();
+    private Invoice currentInvoice = null;
+
+    public InvoiceParser(Function<String, Optional<Customer>> customerLookup,
+                         Function<String, Optional<Employee>> employeeLookup,
+                         Function<String, Optional<Product>> productLookup) {
+        this.customerLookup = customerLookup;
+        this.employeeLookup = employeeLookup;
+        this.productLookup = productLookup;
+    }
+
+    // Chụp bảng tra cứu khách hàng, nhân viên, sản phẩm một lần cho cả lượt load.
+    // Các bảng là bất biến nên mọi parser (kể cả trên nhiều luồng) dùng chung mà không cần khóa
+    public static Supplier<InvoiceParser> withLookupTables(CustomerService customerService,
+                                                           EmployeeService employeeService,
+                                                           ProductService productService) {
+        Map<String, Customer> customers = customerService.snapshotIndex();
+        Map<String, Employee> employees = employeeService.snapshotIndex();
+        Map<String, Product> products = productService.snapshotIndex();
+        return () -> new InvoiceParser(
+            id -> Optional.ofNullable(customers.get(id)),
+            id -> Optional.ofNullable(employees.get(id)),
+            id -> Optional.ofNullable(products.get(id)));
+    }
+
+    public void accept(String line) {
+        if (line == null || line.trim().isEmpty()) {
+            return;
+        }
+
+        try {
+            if (line.contains("Invoice [")) {
+                if (currentInvoice != null) {
+                    invoices.add(currentInvoice);
+                }
+
+                // Ngày có dạng HH:mm:ss nên không thể tách theo dấu ":"
+                String id = line.substring(line.indexOf("ID:") + 3, line.indexOf(",")).trim();
+                String dateStr = line.substring(line.indexOf("Date:") + 5, line.indexOf("]")).trim();
+                Date date = dateFormat.parse(dateStr);
+
+                currentInvoice = new Invoice(id, date);
+
+            } else if (currentInvoice != null) {
+                final Invoice invoice = currentInvoice;
+
+                if (line.contains("Khach hang:")) {
+                    String customerInfo = line.substring(line.indexOf(":") + 1).trim();
+                    String[] parts = customerInfo.split("-", 2);
+                    if (parts.length > 1) {
+                        String customerId = parts[0].trim();
+                        customerLookup.apply(customerId).ifPresent(invoice::setCustomer);
+                    }
+                } else if (line.contains("Nhan vien:")) {
+                    String employeeInfo = line.substring(line.indexOf(":") + 1).trim();
+                    String[] parts = employeeInfo.split("-", 2);
+                    if (parts.length > 1) {
+                        String employeeId = parts[0].trim();
+                        employeeLookup.apply(employeeId).ifPresent(invoice::setEmployee);
+                    }
+                } else if (line.contains("(Ma:")) {
+                    // Dòng có dạng "- <tên> (Ma: <mã>) x<số lượng>: <thành tiền> VND"; tên và mã có thể chứa
+                    // chữ "x" nên chỉ tìm "x" sau dấu ")" đóng phần mã
+                    int codeStart = line.indexOf("(Ma:") + 4;
+                    int codeEnd = line.indexOf(")", codeStart);
+                    int quantityStart = line.indexOf("x", codeEnd) + 1;
+                    int quantityEnd = line.indexOf(":", quantityStart);
+                    if (codeEnd < 0 || quantityStart <= 0 || quantityEnd < 0) {
+                        throw new IllegalArgumentException("Dong san pham khong hop le: " + line);
+                    }
+                    String productId = line.substring(codeStart, codeEnd).trim();
+                    int quantity = Integer.parseInt(line.substring(quantityStart, quantityEnd).trim());
+
+                    productLookup.apply(productId).ifPresent(product ->
+                        invoice.addItem(product, quantity)
+                    );
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Loi khi doc dong hoa don: " + e.getMessage());
+        }
+    }
+
+    public List<Invoice> finish() {
+        if (currentInvoice != null) {
+            invoices.add(currentInvoice);
+            currentInvoice = null;
+        }
+        return invoices;
+    }
+}
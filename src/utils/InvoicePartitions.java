@@ -0,0 +1,541 @@
+package utils;
+
+import interfaces.SystemInterfaces.ByteSource;
+import models.Invoice;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+// Hóa đơn được chia theo tháng: mỗi tháng một file invoices/yyyy-MM.txt cùng định dạng với
+// invoices.txt cũ, kèm chỉ mục (.idx) và thống kê (.stats) riêng. File manifest.txt liệt kê các
+// tháng, số hóa đơn và trạng thái; truy vấn theo khoảng ngày chỉ mở các tháng giao với khoảng đó.
+// Tháng đã qua được đóng (SEALED): không ghi thêm, số liệu chỉ cần tính một lần. Khi cả quý đã
+// qua, các tháng của quý được nén thành bản lưu trữ yyyy-MM.arc (ARCHIVED) và vẫn đọc được như cũ.
+// Nhiều tiến trình có thể cùng ghi hóa đơn: manifest chỉ được sửa khi giữ khóa ghi của nó
+// (FileHandler.lockFor), và trước mỗi thao tác, nếu số thế hệ của manifest đã đổi thì đọc lại.
+public class InvoicePartitions {
+    public static final String DIRECTORY = "invoices/";
+    public static final String MANIFEST = DIRECTORY + "manifest.txt";
+    // File hóa đơn dạng cũ, được chia sang các tháng ở lần mở đầu tiên
+    private static final String LEGACY_FILE = "invoices.txt";
+    private static final String HEADER = "===== HOA DON BAN HANG =====";
+    // Hóa đơn không đọc được ngày được gom vào một phân vùng riêng
+    private static final String UNKNOWN_MONTH = "0000-00";
+
+    private final Path dataDir;
+    private final Path directory;
+    private final Path manifestPath;
+    // Theo thứ tự tháng tăng dần
+    private final TreeMap<String, Partition> partitions = new TreeMap<>();
+    // Số thế hệ của manifest ứng với danh sách phân vùng đang có
+    private long knownGeneration = -1;
+
+    public InvoicePartitions(Path dataDir) throws IOException {
+        this.dataDir = dataDir;
+        this.directory = dataDir.resolve(DIRECTORY);
+        this.manifestPath = dataDir.resolve(MANIFEST);
+        open();
+    }
+
+    public boolean isEmpty() {
+        try {
+            sync();
+        } catch (IOException e) {
+            System.err.println("Loi khi doc manifest hoa don: " + e.getMessage());
+        }
+        return partitions.values().stream().allMatch(partition -> partition.invoiceCount == 0);
+    }
+
+    public Collection<Partition> all() throws IOException {
+        sync();
+        return partitions.values();
+    }
+
+    // Các phân vùng có thể chứa hóa đơn trong khoảng [from, to], theo thứ tự tháng
+    public List<Partition> between(Date from, Date to) throws IOException {
+        sync();
+        return new ArrayList<>(partitions.subMap(monthOf(from), true, monthOf(to), true).values());
+    }
+
+    // Ghi nối hóa đơn vào phân vùng của tháng lập hóa đơn và cập nhật manifest.
+    // Giữ khóa ghi của manifest suốt lượt để số hóa đơn và trạng thái tháng do tiến trình khác
+    // vừa ghi không bị ghi đè bằng bản cũ
+    public synchronized Partition append(Invoice invoice) throws IOException {
+        ProcessFileLock.Hold hold = FileHandler.lockFor(manifestPath).lockExclusive();
+        try {
+            syncLocked();
+            String month = monthOf(invoice.getDate());
+            Partition partition = partitions.computeIfAbsent(month, this::newPartition);
+            // Hóa đơn ghi lùi ngày vào tháng đã đóng thì mở lại tháng đó
+            if (partition.isArchived()) {
+                partition.data.restore();
+            }
+            partition.sealed = false;
+            // Thống kê đã đồng bộ trước đó chưa có hóa đơn này: tháng có được đóng lại ngay thì vẫn phải tính lại
+            partition.statisticsFresh = false;
+
+            // Ghi qua hàng đợi ghi chung để gộp fsync với các hóa đơn của quầy khác, nhưng phải chờ xong
+            // vì chỉ mục được cập nhật ngay từ nội dung file
+            WriteQueue.await(WriteQueue.shared().append(partition.path, HEADER, FileHandler.formatInvoice(invoice)));
+
+            partition.invoiceCount++;
+            sealClosedMonths();
+            saveManifest();
+            return partition;
+        } finally {
+            hold.close();
+        }
+    }
+
+    // Load toàn bộ hóa đơn theo thứ tự tháng, mỗi phân vùng được parse song song
+    public List<Invoice> loadAll(ParallelInvoiceLoader loader) throws IOException {
+        sync();
+        List<Invoice> invoices = new ArrayList<>();
+        for (Partition partition : partitions.values()) {
+            InvoiceArchive archive = partition.data.archive();
+            invoices.addAll(archive != null ? loader.load(archive) : loader.load(partition.path));
+        }
+        return invoices;
+    }
+
+    // Tháng mới nhất trước vì hóa đơn hay được tra cứu là hóa đơn gần đây
+    public Optional<String> readRecord(String id) throws IOException {
+        sync();
+        for (Partition partition : partitions.descendingMap().values()) {
+            Optional<String> record = partition.index.readRecord(id);
+            if (record.isPresent()) {
+                return record;
+            }
+        }
+        return Optional.empty();
+    }
+
+    // Mọi hóa đơn mang mã này (mã chỉ chính xác tới phút nên có thể trùng), theo thứ tự tháng
+    public List<String> readRecords(String id) throws IOException {
+        sync();
+        List<String> records = new ArrayList<>();
+        for (Partition partition : partitions.values()) {
+            records.addAll(partition.index.readRecords(id));
+        }
+        return records;
+    }
+
+    // Mỗi mã một lần dù có hóa đơn trùng mã ở nhiều tháng
+    public List<String> findIds(String keyword) throws IOException {
+        sync();
+        Set<String> ids = new LinkedHashSet<>();
+        for (Partition partition : partitions.values()) {
+            ids.addAll(partition.index.findIds(keyword));
+        }
+        return new ArrayList<>(ids);
+    }
+
+    public int countByCustomer(String customerId) throws IOException {
+        sync();
+        int count = 0;
+        for (Partition partition : partitions.values()) {
+            count += partition.index.countByCustomer(customerId);
+        }
+        return count;
+    }
+
+    // Bản ghi của khách hàng, mới nhất trước, qua các tháng từ mới đến cũ
+    public List<String> readCustomerRecords(String customerId, int skip, int limit) throws IOException {
+        sync();
+        List<String> records = new ArrayList<>();
+        for (Partition partition : partitions.descendingMap().values()) {
+            if (records.size() >= limit) {
+                break;
+            }
+            int count = partition.index.countByCustomer(customerId);
+            if (skip >= count) {
+                skip -= count;
+                continue;
+            }
+            records.addAll(partition.index.readCustomerRecords(customerId, skip, limit - records.size()));
+            skip = 0;
+        }
+        return records;
+    }
+
+    // Duyệt từng hóa đơn (các dòng từ "Invoice [" tới trước hóa đơn kế tiếp) của một phân vùng.
+    // Danh sách truyền cho action được dùng lại, action trả về false để dừng sớm
+    public static boolean forEachRecord(Partition partition, Predicate<List<String>> action) throws IOException {
+        List<String> record = new ArrayList<>();
+        boolean completed = forEachLine(partition, line -> {
+            boolean isHeader = line.contains("Invoice [");
+            if (isHeader && !record.isEmpty()) {
+                if (!action.test(record)) {
+                    return false;
+                }
+                record.clear();
+            }
+            if (isHeader || !record.isEmpty()) {
+                record.add(line);
+            }
+            return true;
+        });
+        return completed && (record.isEmpty() || action.test(record));
+    }
+
+    // Duyệt từng dòng của phân vùng dù đang ở dạng văn bản hay đã nén, action trả về false để dừng sớm
+    public static boolean forEachLine(Partition partition, Predicate<String> action) throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(partition.data.openFrom(0), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!action.test(line)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Nén các tháng đã đóng thuộc những quý đã qua; trả về true nếu manifest có thay đổi
+    private boolean archiveClosedQuarters() throws IOException {
+        int currentQuarter = quarterOf(monthOf(new Date()));
+        boolean changed = false;
+        for (Partition partition : partitions.values()) {
+            if (partition.sealed && !partition.isArchived() && quarterOf(partition.month) < currentQuarter) {
+                partition.data.archive(partition.path);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private synchronized void open() throws IOException {
+        Files.createDirectories(directory);
+        ProcessFileLock.Hold hold = FileHandler.lockFor(manifestPath).lockExclusive();
+        try {
+            syncLocked();
+            if (!Files.exists(manifestPath) && Files.exists(dataDir.resolve(LEGACY_FILE))) {
+                migrateLegacyFile();
+            }
+            boolean changed = sealClosedMonths();
+            changed |= archiveClosedQuarters();
+            if (changed || !Files.exists(manifestPath)) {
+                saveManifest();
+            }
+        } finally {
+            hold.close();
+        }
+    }
+
+    // Đọc lại manifest nếu tiến trình khác đã ghi nó kể từ lần đọc trước
+    private synchronized void sync() throws IOException {
+        if (FileHandler.generation(manifestPath) == knownGeneration) {
+            return;
+        }
+        // Khóa ghi cả khi chỉ đọc: lần đọc lại sửa danh sách phân vùng dùng chung
+        ProcessFileLock.Hold hold = FileHandler.lockFor(manifestPath).lockExclusive();
+        try {
+            syncLocked();
+        } finally {
+            hold.close();
+        }
+    }
+
+    private void syncLocked() throws IOException {
+        long generation = FileHandler.generation(manifestPath);
+        if (generation == knownGeneration) {
+            return;
+        }
+        if (Files.exists(manifestPath)) {
+            loadManifest();
+        }
+        knownGeneration = generation;
+    }
+
+    // Cập nhật các phân vùng theo manifest; phân vùng đã có được giữ lại cùng chỉ mục và thống kê của nó
+    private void loadManifest() throws IOException {
+        for (String line : Files.readAllLines(manifestPath, StandardCharsets.UTF_8)) {
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("\\|");
+            if (parts.length < 4) {
+                continue;
+            }
+            Partition partition = partitions.computeIfAbsent(parts[0].trim(), this::newPartition);
+            try {
+                int count = Integer.parseInt(parts[2].trim());
+                if (count != partition.invoiceCount) {
+                    // Tiến trình khác đã ghi thêm hóa đơn, có thể vào cả tháng đã đóng
+                    partition.statisticsFresh = false;
+                }
+                partition.invoiceCount = count;
+            } catch (NumberFormatException e) {
+                System.err.println("Manifest hoa don co so luong khong hop le: " + line);
+            }
+            String state = parts[3].trim();
+            partition.sealed = state.equals("SEALED") || state.equals("ARCHIVED");
+            if (state.equals("ARCHIVED") && !partition.isArchived()) {
+                partition.data.finishArchive();
+            } else if (!state.equals("ARCHIVED") && partition.isArchived()) {
+                // Tiến trình khác đã mở lại tháng này để ghi hóa đơn lùi ngày
+                partition.data.finishRestore();
+            }
+        }
+    }
+
+    private void saveManifest() throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("# thang|file|so hoa don|trang thai");
+        for (Partition partition : partitions.values()) {
+            String state = partition.isArchived() ? "ARCHIVED" : partition.sealed ? "SEALED" : "OPEN";
+            lines.add(String.join("|", partition.month, partition.data.current().getFileName().toString(),
+                String.valueOf(partition.invoiceCount), state));
+        }
+        // Ghi file tạm rồi đổi tên nên manifest không bao giờ bị ghi dở. Không qua hàng đợi ghi:
+        // luồng ghi cần khóa của manifest, mà khóa đó đang được giữ ở đây
+        Path temp = manifestPath.resolveSibling(manifestPath.getFileName() + ".tmp");
+        Files.write(temp, lines, StandardCharsets.UTF_8);
+        Files.move(temp, manifestPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        knownGeneration = FileHandler.nextGeneration(manifestPath);
+    }
+
+    // Chia invoices.txt cũ sang các tháng theo ngày của từng hóa đơn, sau đó đổi tên file cũ thành .bak
+    private void migrateLegacyFile() throws IOException {
+        Path legacy = dataDir.resolve(LEGACY_FILE);
+        Map<String, BufferedWriter> writers = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(legacy, StandardCharsets.UTF_8)) {
+            List<String> record = new ArrayList<>();
+            String month = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.contains("Invoice [")) {
+                    // Dòng "----" ngay trước tiêu đề thuộc về hóa đơn mới
+                    String separator = null;
+                    if (!record.isEmpty() && record.get(record.size() - 1).startsWith("----")) {
+                        separator = record.remove(record.size() - 1);
+                    }
+                    writeRecord(writers, month, record);
+                    record.clear();
+                    if (separator != null) {
+                        record.add(separator);
+                    }
+                    month = monthOfHeader(line);
+                }
+                if (month != null || line.startsWith("----")) {
+                    record.add(line);
+                }
+            }
+            writeRecord(writers, month, record);
+        } finally {
+            for (BufferedWriter writer : writers.values()) {
+                writer.close();
+            }
+        }
+
+        saveManifest();
+        for (String derived : new String[] {"invoices.idx", "invoices.stats"}) {
+            Files.deleteIfExists(dataDir.resolve(derived));
+        }
+        Files.move(legacy, dataDir.resolve(LEGACY_FILE + ".bak"), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void writeRecord(Map<String, BufferedWriter> writers, String month, List<String> record)
+            throws IOException {
+        if (month == null || record.isEmpty()) {
+            return;
+        }
+        BufferedWriter writer = writers.get(month);
+        if (writer == null) {
+            Partition partition = partitions.computeIfAbsent(month, this::newPartition);
+            writer = Files.newBufferedWriter(partition.path, StandardCharsets.UTF_8);
+            writer.write(HEADER);
+            writer.newLine();
+            writers.put(month, writer);
+        }
+        for (String line : record) {
+            writer.write(line);
+            writer.newLine();
+        }
+        partitions.get(month).invoiceCount++;
+    }
+
+    // Đóng các tháng trước tháng hiện tại, trả về true nếu manifest có thay đổi
+    private boolean sealClosedMonths() {
+        String current = monthOf(new Date());
+        boolean changed = false;
+        for (Partition partition : partitions.headMap(current, false).values()) {
+            if (!partition.sealed) {
+                partition.sealed = true;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private Partition newPartition(String month) {
+        return new Partition(month, directory.resolve(month + ".txt"), directory.resolve(month + ".arc"),
+            directory.resolve(month + ".idx"), directory.resolve(month + ".stats"));
+    }
+
+    private static String monthOf(Date date) {
+        return new SimpleDateFormat("yyyy-MM").format(date);
+    }
+
+    // "2024-11" -> số thứ tự quý tính từ năm 0, để so sánh hai tháng có cùng quý hay không
+    private static int quarterOf(String month) {
+        try {
+            int year = Integer.parseInt(month.substring(0, 4));
+            int monthOfYear = Integer.parseInt(month.substring(5, 7));
+            return year * 4 + Math.max(0, monthOfYear - 1) / 3;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // "Invoice [ID: HD001, Date: 2024-11-15 14:41:44]" -> "2024-11"
+    private static String monthOfHeader(String line) {
+        int dateIndex = line.indexOf("Date:");
+        if (dateIndex < 0) {
+            return UNKNOWN_MONTH;
+        }
+        String date = line.substring(dateIndex + 5).trim();
+        return date.matches("\\d{4}-\\d{2}.*") ? date.substring(0, 7) : UNKNOWN_MONTH;
+    }
+
+    public static class Partition {
+        private final String month;
+        // File văn bản của tháng; không còn tồn tại sau khi tháng đã được nén
+        private final Path path;
+        private final PartitionData data;
+        private final InvoiceIndex index;
+        private final SalesStatisticsStore statistics;
+        private int invoiceCount = 0;
+        private boolean sealed = false;
+        // Tháng đã đóng không đổi nữa nên thống kê chỉ cần đồng bộ một lần
+        private boolean statisticsFresh = false;
+
+        private Partition(String month, Path path, Path archivePath, Path indexPath, Path statisticsPath) {
+            this.month = month;
+            this.path = path;
+            this.data = new PartitionData(path, archivePath);
+            this.index = new InvoiceIndex(data, indexPath);
+            this.statistics = new SalesStatisticsStore(data, statisticsPath);
+        }
+
+        public String getMonth() { return month; }
+        public int getInvoiceCount() { return invoiceCount; }
+        public boolean isSealed() { return sealed; }
+        public boolean isArchived() { return data.archived; }
+
+        public InvoiceIndex getIndex() {
+            return index;
+        }
+
+        // Thống kê đã đồng bộ với dữ liệu của phân vùng
+        public SalesStatisticsStore getStatistics() throws IOException {
+            if (!sealed || !statisticsFresh) {
+                statistics.refresh();
+                statisticsFresh = true;
+            }
+            return statistics;
+        }
+    }
+
+    // Dữ liệu của một phân vùng: đọc từ bản lưu trữ nếu tháng đã được nén, ngược lại từ file văn bản.
+    // Hai dạng có cùng nội dung từng byte nên chỉ mục và thống kê không cần biết đang đọc dạng nào
+    private static class PartitionData implements ByteSource {
+        private final Path textPath;
+        private final Path archivePath;
+        private boolean archived = false;
+        private InvoiceArchive archive;
+
+        PartitionData(Path textPath, Path archivePath) {
+            this.textPath = textPath;
+            this.archivePath = archivePath;
+        }
+
+        Path current() {
+            return archived ? archivePath : textPath;
+        }
+
+        InvoiceArchive archive() throws IOException {
+            if (archived && archive == null) {
+                archive = new InvoiceArchive(archivePath);
+            }
+            return archive;
+        }
+
+        void archive(Path source) throws IOException {
+            InvoiceArchive.write(source, archivePath);
+            finishArchive();
+        }
+
+        // Bản nén đã ghi xong thì file văn bản (nếu còn sót do dừng giữa chừng) không cần nữa
+        void finishArchive() throws IOException {
+            archived = true;
+            archive = null;
+            Files.deleteIfExists(textPath);
+        }
+
+        void restore() throws IOException {
+            archive().extractTo(textPath);
+            finishRestore();
+            Files.deleteIfExists(archivePath);
+        }
+
+        void finishRestore() {
+            archived = false;
+            archive = null;
+        }
+
+        @Override
+        public long size() throws IOException {
+            if (archived) {
+                return archive().size();
+            }
+            return Files.exists(textPath) ? Files.size(textPath) : 0;
+        }
+
+        @Override
+        public InputStream openFrom(long offset) throws IOException {
+            if (archived) {
+                return archive().openFrom(offset);
+            }
+            if (!Files.exists(textPath)) {
+                return InputStream.nullInputStream();
+            }
+            InputStream in = Files.newInputStream(textPath);
+            in.skipNBytes(offset);
+            return in;
+        }
+
+        @Override
+        public byte[] read(long offset, int length) throws IOException {
+            if (archived) {
+                return archive().read(offset, length);
+            }
+            try (RandomAccessFile file = new RandomAccessFile(textPath.toFile(), "r")) {
+                byte[] bytes = new byte[length];
+                file.seek(offset);
+                file.readFully(bytes);
+                return bytes;
+            }
+        }
+    }
+}
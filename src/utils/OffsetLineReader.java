@@ -0,0 +1,72 @@
+package utils;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Đọc từng dòng của dữ liệu từ một vị trí byte bất kỳ và cho biết chính xác vị trí byte của mỗi dòng,
+// dùng cho các chỉ mục cần lưu offset vào file hóa đơn (hỗ trợ cả \n và \r\n)
+public class OffsetLineReader implements Closeable {
+    private final InputStream in;
+    private byte[] buffer = new byte[256];
+    private long position;
+    private long lineStart;
+    private boolean terminated;
+
+    // in phải đang đứng đúng tại vị trí byte start của dữ liệu
+    public OffsetLineReader(InputStream in, long start) {
+        this.in = new BufferedInputStream(in, 64 * 1024);
+        this.position = start;
+        this.lineStart = start;
+    }
+
+    // Trả về dòng tiếp theo (không gồm ký tự xuống dòng), hoặc null khi hết file
+    public String readLine() throws IOException {
+        lineStart = position;
+        int length = 0;
+        int b;
+        while ((b = in.read()) != -1) {
+            position++;
+            if (b == '\n') {
+                terminated = true;
+                if (length > 0 && buffer[length - 1] == '\r') {
+                    length--;
+                }
+                return new String(buffer, 0, length, StandardCharsets.UTF_8);
+            }
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, length * 2);
+            }
+            buffer[length++] = (byte) b;
+        }
+        if (position == lineStart) {
+            return null;
+        }
+        // Dòng cuối chưa có ký tự xuống dòng (có thể đang được ghi dở)
+        terminated = false;
+        return new String(buffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // Vị trí byte đầu dòng vừa đọc
+    public long lineStart() {
+        return lineStart;
+    }
+
+    // Vị trí byte ngay sau dòng vừa đọc (kể cả ký tự xuống dòng)
+    public long position() {
+        return position;
+    }
+
+    // Dòng vừa đọc có kết thúc bằng ký tự xuống dòng hay không
+    public boolean isTerminated() {
+        return terminated;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,187 @@
+package utils;
+
+import models.Invoice;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+// Đọc file hóa đơn song song: chia file thành các đoạn byte, mỗi đoạn bắt đầu đúng tại một dòng
+// "Invoice [", parse từng đoạn trên ForkJoinPool rồi ghép kết quả theo đúng thứ tự trong file.
+// Bản lưu trữ nén đã được chia sẵn thành các khối như vậy nên mỗi khối là một đoạn
+public class ParallelInvoiceLoader {
+    private static final long MIN_CHUNK_SIZE = 256 * 1024;
+    private static final long MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+    private static final int SEARCH_WINDOW = 64 * 1024;
+    private static final byte[] RECORD_START = "\nInvoice [".getBytes(StandardCharsets.US_ASCII);
+
+    private final Supplier<InvoiceParser> parserFactory;
+    private final ForkJoinPool pool;
+
+    public ParallelInvoiceLoader(Supplier<InvoiceParser> parserFactory) {
+        this(parserFactory, ForkJoinPool.commonPool());
+    }
+
+    public ParallelInvoiceLoader(Supplier<InvoiceParser> parserFactory, ForkJoinPool pool) {
+        this.parserFactory = parserFactory;
+        this.pool = pool;
+    }
+
+    public List<Invoice> load(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return new ArrayList<>();
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            // Khoảng 4 đoạn cho mỗi luồng để cân bằng tải khi các hóa đơn dài ngắn khác nhau
+            long threshold = size / (pool.getParallelism() * 4L);
+            threshold = Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, threshold));
+            return pool.invoke(new ChunkTask(channel, 0, size, threshold));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public List<Invoice> load(InvoiceArchive archive) throws IOException {
+        if (archive.blockCount() == 0) {
+            return new ArrayList<>();
+        }
+        try {
+            return pool.invoke(new BlockTask(archive, 0, archive.blockCount()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private List<Invoice> parseText(String text) throws IOException {
+        InvoiceParser parser = parserFactory.get();
+        try (BufferedReader reader = new BufferedReader(new StringReader(text))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                parser.accept(line);
+            }
+        }
+        return parser.finish();
+    }
+
+    // Giải nén và parse các khối [from, to) của bản lưu trữ
+    @SuppressWarnings("serial")
+    private class BlockTask extends RecursiveTask<List<Invoice>> {
+        private final InvoiceArchive archive;
+        private final int from;
+        private final int to;
+
+        BlockTask(InvoiceArchive archive, int from, int to) {
+            this.archive = archive;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<Invoice> compute() {
+            try {
+                if (to - from == 1) {
+                    return parseText(new String(archive.readBlock(from), StandardCharsets.UTF_8));
+                }
+                int mid = (from + to) >>> 1;
+                BlockTask left = new BlockTask(archive, from, mid);
+                left.fork();
+                List<Invoice> right = new BlockTask(archive, mid, to).compute();
+                List<Invoice> result = left.join();
+                result.addAll(right);
+                return result;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private class ChunkTask extends RecursiveTask<List<Invoice>> {
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        private final long threshold;
+
+        ChunkTask(FileChannel channel, long start, long end, long threshold) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected List<Invoice> compute() {
+            try {
+                if (end - start <= threshold) {
+                    return parseRange();
+                }
+                long mid = alignToRecord(start + (end - start) / 2);
+                if (mid <= start || mid >= end) {
+                    return parseRange();
+                }
+
+                ChunkTask left = new ChunkTask(channel, start, mid, threshold);
+                left.fork();
+                List<Invoice> right = new ChunkTask(channel, mid, end, threshold).compute();
+                List<Invoice> result = left.join();
+                result.addAll(right);
+                return result;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // Tìm vị trí bắt đầu của dòng "Invoice [" đầu tiên kể từ position, hoặc end nếu không có
+        private long alignToRecord(long position) throws IOException {
+            ByteBuffer window = ByteBuffer.allocate(SEARCH_WINDOW);
+            long windowStart = position - 1;
+            while (windowStart < end) {
+                window.clear();
+                int read = channel.read(window, windowStart);
+                if (read < RECORD_START.length) {
+                    break;
+                }
+                byte[] bytes = window.array();
+                for (int i = 0; i + RECORD_START.length <= read; i++) {
+                    if (matchesAt(bytes, i)) {
+                        return windowStart + i + 1;
+                    }
+                }
+                // Lùi lại một chút để không bỏ sót mẫu nằm vắt qua hai cửa sổ
+                windowStart += read - RECORD_START.length + 1;
+            }
+            return end;
+        }
+
+        private boolean matchesAt(byte[] bytes, int offset) {
+            for (int j = 0; j < RECORD_START.length; j++) {
+                if (bytes[offset + j] != RECORD_START[j]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private List<Invoice> parseRange() throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, start + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            return parseText(new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Cây radix trên số điện thoại đã chuẩn hóa, dùng để nhận diện khách hàng theo số gọi đến.
+// Mỗi cạnh mang một đoạn chữ số nên độ sâu chỉ phụ thuộc vào số nhánh thực sự có,
+// tra cứu chính xác và theo tiền tố đều tỉ lệ với độ dài số, không phụ thuộc số khách hàng.
+public class PhoneIndex {
+    private final Node root = new Node("");
+    // Số đã đưa vào cây của từng khách hàng, để gỡ đúng số cũ khi khách đổi số
+    private final Map<String, String> phoneById = new HashMap<>();
+
+    // Chuẩn hóa mọi dạng số mà addCustomer chấp nhận (10-11 chữ số) cùng các dạng gõ thường gặp:
+    // bỏ ký tự không phải số, "84xxxxxxxxx" / "+84 xxx..." đổi về "0xxxxxxxxx"
+    public static String normalize(String phone) {
+        String digits = TextNormalizer.digitsOnly(phone);
+        if (digits.startsWith("84") && digits.length() == 11) {
+            return "0" + digits.substring(2);
+        }
+        return digits;
+    }
+
+    public void clear() {
+        root.children = null;
+        root.ids = null;
+        phoneById.clear();
+    }
+
+    public void put(String id, String phone) {
+        String normalized = normalize(phone);
+        String old = phoneById.get(id);
+        if (normalized.equals(old)) {
+            return;
+        }
+        if (old != null) {
+            remove(id);
+        }
+        if (normalized.isEmpty()) {
+            return;
+        }
+        phoneById.put(id, normalized);
+        insert(normalized, id);
+    }
+
+    public void remove(String id) {
+        String old = phoneById.remove(id);
+        if (old == null) {
+            return;
+        }
+        Node node = find(old);
+        if (node != null && node.ids != null) {
+            node.ids.remove(id);
+            if (node.ids.isEmpty()) {
+                node.ids = null;
+            }
+        }
+    }
+
+    // Mã các khách hàng có đúng số điện thoại này
+    public List<String> findExact(String phone) {
+        Node node = find(normalize(phone));
+        return node == null || node.ids == null ? new ArrayList<>() : new ArrayList<>(node.ids);
+    }
+
+    // Mã các khách hàng có số bắt đầu bằng prefix, tối đa limit kết quả theo thứ tự số tăng dần
+    public List<String> findByPrefix(String prefix, int limit) {
+        List<String> result = new ArrayList<>();
+        String digits = normalizePrefix(prefix);
+        Node node = root;
+        int matched = 0;
+        while (matched < digits.length()) {
+            Node child = node.child(digits.charAt(matched));
+            if (child == null) {
+                return result;
+            }
+            int common = commonPrefix(child.label, digits, matched);
+            if (matched + common == digits.length()) {
+                // Tiền tố kết thúc ở giữa hoặc cuối cạnh này: mọi số trong nhánh đều khớp
+                node = child;
+                break;
+            }
+            if (common < child.label.length()) {
+                return result;
+            }
+            matched += common;
+            node = child;
+        }
+        collect(node, result, limit);
+        return result;
+    }
+
+    // Tiền tố đang gõ chưa đủ độ dài nên chỉ đổi "84" đầu thành "0" khi đã chắc là mã quốc gia
+    private static String normalizePrefix(String prefix) {
+        String digits = TextNormalizer.digitsOnly(prefix);
+        if (prefix != null && prefix.trim().startsWith("+84")) {
+            return "0" + digits.substring(2);
+        }
+        return digits;
+    }
+
+    private void insert(String phone, String id) {
+        Node node = root;
+        int pos = 0;
+        while (pos < phone.length()) {
+            Node child = node.child(phone.charAt(pos));
+            if (child == null) {
+                child = new Node(phone.substring(pos));
+                node.setChild(child);
+                node = child;
+                pos = phone.length();
+                break;
+            }
+            int common = commonPrefix(child.label, phone, pos);
+            if (common < child.label.length()) {
+                // Tách cạnh: phần chung thành nút mới, phần còn lại của cạnh cũ thành con của nó
+                Node split = new Node(child.label.substring(0, common));
+                child.label = child.label.substring(common);
+                split.setChild(child);
+                node.setChild(split);
+                child = split;
+            }
+            node = child;
+            pos += common;
+        }
+        if (node.ids == null) {
+            node.ids = new ArrayList<>(1);
+        }
+        if (!node.ids.contains(id)) {
+            node.ids.add(id);
+        }
+    }
+
+    private Node find(String phone) {
+        Node node = root;
+        int pos = 0;
+        while (pos < phone.length()) {
+            Node child = node.child(phone.charAt(pos));
+            if (child == null || !phone.startsWith(child.label, pos)) {
+                return null;
+            }
+            pos += child.label.length();
+            node = child;
+        }
+        return node;
+    }
+
+    private static void collect(Node node, List<String> result, int limit) {
+        if (result.size() >= limit) {
+            return;
+        }
+        if (node.ids != null) {
+            for (String id : node.ids) {
+                if (result.size() >= limit) {
+                    return;
+                }
+                result.add(id);
+            }
+        }
+        if (node.children == null) {
+            return;
+        }
+        for (Node child : node.children) {
+            if (child != null) {
+                collect(child, result, limit);
+            }
+        }
+    }
+
+    private static int commonPrefix(String label, String text, int offset) {
+        int n = Math.min(label.length(), text.length() - offset);
+        int i = 0;
+        while (i < n && label.charAt(i) == text.charAt(offset + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static class Node {
+        private String label;
+        // Con theo chữ số đầu của cạnh, chỉ cấp phát khi nút có con (phần lớn nút là lá)
+        private Node[] children;
+        // Mã khách hàng có số kết thúc đúng tại nút này
+        private List<String> ids;
+
+        Node(String label) {
+            this.label = label;
+        }
+
+        Node child(char digit) {
+            return children == null ? null : children[digit - '0'];
+        }
+
+        void setChild(Node child) {
+            if (children == null) {
+                children = new Node[10];
+            }
+            children[child.label.charAt(0) - '0'] = child;
+        }
+    }
+}
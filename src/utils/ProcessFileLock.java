@@ -0,0 +1,147 @@
+package utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Khóa đọc/ghi của một file dùng được cả giữa các luồng lẫn giữa các tiến trình (nhiều máy bán hàng
+// cùng chạy trên một thư mục dữ liệu dùng chung). Trong tiến trình dùng ReentrantReadWriteLock; giữa các
+// tiến trình dùng FileChannel.lock trên file "<tên file>.lock" đặt cạnh: khóa chia sẻ khi còn luồng đọc,
+// khóa độc quyền khi có luồng ghi. Không khóa thẳng file dữ liệu vì ghi đè là đổi tên file tạm,
+// khóa trên file cũ không còn tác dụng.
+// File .lock còn giữ số thế hệ (8 byte đầu), tăng sau mỗi lần ghi, để tiến trình khác nhận ra file đã đổi
+// kể cả khi thời gian sửa và kích thước trùng nhau.
+// Chỉ có lockShared/lockExclusive trả về Hold, trả khóa bằng close() trong finally: khóa giữa các
+// tiến trình không hỗ trợ tryLock hay Condition nên không giả làm java.util.concurrent.locks.Lock.
+public class ProcessFileLock {
+    private final Path lockPath;
+    private final ReentrantReadWriteLock local = new ReentrantReadWriteLock();
+    // Mở một lần và giữ suốt tiến trình; FileLock của JVM gắn với kênh này
+    private FileChannel channel;
+    private FileLock processLock;
+    private int readers = 0;
+    private int writers = 0;
+
+    ProcessFileLock(Path path) {
+        this.lockPath = path.resolveSibling(path.getFileName() + ".lock");
+    }
+
+    // Khóa đọc: nhiều luồng và nhiều tiến trình cùng giữ được. Luồng đang giữ khóa ghi lấy được khóa đọc
+    public Hold lockShared() {
+        return acquire(local.readLock(), false);
+    }
+
+    // Khóa ghi: độc quyền với mọi luồng và mọi tiến trình khác; lấy lại được khi đang giữ
+    public Hold lockExclusive() {
+        return acquire(local.writeLock(), true);
+    }
+
+    // Số thế hệ hiện tại của file, 0 nếu chưa từng được ghi qua khóa này
+    synchronized long generation() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        while (buffer.hasRemaining()) {
+            if (channel().read(buffer, buffer.position()) < 0) {
+                return 0;
+            }
+        }
+        buffer.flip();
+        return buffer.getLong();
+    }
+
+    // Gọi khi đang giữ khóa ghi, ngay sau khi ghi xong file dữ liệu
+    synchronized long nextGeneration() throws IOException {
+        long next = generation() + 1;
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES).putLong(next);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel().write(buffer, buffer.position());
+        }
+        return next;
+    }
+
+    private Hold acquire(Lock inner, boolean write) {
+        inner.lock();
+        try {
+            count(write, 1);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                if (write) {
+                    writers--;
+                } else {
+                    readers--;
+                }
+            }
+            inner.unlock();
+            throw e;
+        }
+        return new Hold(inner, write);
+    }
+
+    // Kênh bị đóng khi một luồng bị ngắt (interrupt) giữa lúc thao tác trên nó: mở lại cho lần sau
+    private FileChannel channel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(lockPath, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+            processLock = null;
+        }
+        return channel;
+    }
+
+    // Đổi khóa giữa các tiến trình theo số luồng đang đọc/ghi: có ghi thì độc quyền, chỉ đọc thì chia sẻ
+    private synchronized void updateProcessLock() {
+        boolean exclusive = writers > 0;
+        boolean needed = exclusive || readers > 0;
+        try {
+            if (processLock != null && (!processLock.isValid() || !needed || processLock.isShared() == exclusive)) {
+                if (processLock.isValid()) {
+                    processLock.release();
+                }
+                processLock = null;
+            }
+            if (needed && processLock == null) {
+                processLock = channel().lock(0, Long.MAX_VALUE, !exclusive);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Khong the khoa file " + lockPath + ": " + e.getMessage(), e);
+        }
+    }
+
+    private synchronized void count(boolean write, int delta) {
+        if (write) {
+            writers += delta;
+        } else {
+            readers += delta;
+        }
+        updateProcessLock();
+    }
+
+    // Một lần giữ khóa; close() trả khóa, gọi nhiều lần chỉ có tác dụng lần đầu
+    public final class Hold implements AutoCloseable {
+        private final Lock inner;
+        private final boolean write;
+        private boolean released = false;
+
+        private Hold(Lock inner, boolean write) {
+            this.inner = inner;
+            this.write = write;
+        }
+
+        @Override
+        public void close() {
+            if (released) {
+                return;
+            }
+            released = true;
+            try {
+                count(write, -1);
+            } finally {
+                inner.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package utils;
+
+import models.Accessory;
+import models.Computer;
+import models.Product;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Kho sản phẩm dạng nhị phân: mỗi sản phẩm nằm trong một ô (slot) có kích thước cố định,
+// nên việc đổi số lượng tồn kho chỉ là một lần ghi 4 byte tại đúng vị trí của ô đó.
+// Mọi thao tác giữ khóa độc quyền của file (cả giữa các tiến trình, xem FileHandler.lockFor), kể cả đọc toàn bộ
+// vì lần đọc đó dựng lại chỉ mục ô dùng chung; trước khi ghi, nếu tiến trình khác đã ghi từ lần đọc trước thì dựng lại chỉ mục ô để không cấp trùng ô.
+public class ProductStore {
+    private static final int MAGIC = 0x50535430; // "PST0"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int SLOT_SIZE = 512;
+
+    // Bố cục một ô
+    private static final int TYPE_OFFSET = 0;
+    private static final int QUANTITY_OFFSET = 4;
+    private static final int PRICE_OFFSET = 8;
+    private static final int FIELDS_OFFSET = 16;
+
+    private static final byte TYPE_EMPTY = 0;
+    private static final byte TYPE_COMPUTER = 1;
+    private static final byte TYPE_ACCESSORY = 2;
+
+    // Số byte UTF-8 tối đa cho từng trường chuỗi: ID, Name, rồi 3 trường phụ
+    // (CPU, RAM, Hard Drive với máy tính; Type với phụ kiện)
+    private static final int[] FIELD_LIMITS = {32, 160, 96, 96, 96};
+
+    private final Path path;
+    // Chỉ mục vị trí: ID sản phẩm -> số thứ tự ô trong file
+    private final Map<String, Integer> slotIndex = new HashMap<>();
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    private int slotCount = 0;
+    private boolean indexLoaded = false;
+    // Số thế hệ của file ứng với chỉ mục ô đang có
+    private long knownGeneration = -1;
+
+    public ProductStore(Path path) {
+        this.path = path;
+    }
+
+    public boolean exists() {
+        return Files.exists(path);
+    }
+
+    // Đọc toàn bộ sản phẩm và dựng lại chỉ mục vị trí. Giữ khóa ghi chứ không phải khóa đọc:
+    // hai luồng cùng dựng lại slotIndex (HashMap) sẽ làm hỏng nó
+    public List<Product> loadAll() throws IOException {
+        ProcessFileLock.Hold hold = FileHandler.lockFor(path).lockExclusive();
+        try {
+            return readAll();
+        } finally {
+            hold.close();
+        }
+    }
+
+    private List<Product> readAll() throws IOException {
+        List<Product> products = new ArrayList<>();
+        slotIndex.clear();
+        freeSlots.clear();
+        slotCount = 0;
+        knownGeneration = FileHandler.generation(path);
+        if (!Files.exists(path)) {
+            indexLoaded = true;
+            return products;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            readHeader(channel);
+            slotCount = (int) ((channel.size() - HEADER_SIZE) / SLOT_SIZE);
+            ByteBuffer slot = ByteBuffer.allocate(SLOT_SIZE);
+            for (int i = 0; i < slotCount; i++) {
+                slot.clear();
+                readFully(channel, slot, slotPosition(i));
+                slot.flip();
+                Product product = decode(slot);
+                if (product == null) {
+                    freeSlots.add(i);
+                } else {
+                    slotIndex.put(product.getId(), i);
+                    products.add(product);
+                }
+            }
+        }
+        indexLoaded = true;
+        return products;
+    }
+
+    // Khóa ghi của kho cho nơi cần đọc - tính - ghi như một bước (khóa lại được bên trong)
+    public ProcessFileLock.Hold lockExclusive() {
+        return FileHandler.lockFor(path).lockExclusive();
+    }
+
+    // Ghi đè toàn bộ kho, dùng khi chuyển dữ liệu từ products.txt sang
+    public void replaceAll(List<Product> products) throws IOException {
+        ProcessFileLock.Hold hold = FileHandler.lockFor(path).lockExclusive();
+        try {
+            slotIndex.clear();
+            freeSlots.clear();
+            slotCount = 0;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeHeader(channel);
+                for (Product product : products) {
+                    if (slotIndex.containsKey(product.getId())) {
+                        continue;
+                    }
+                    channel.write(encode(product), slotPosition(slotCount));
+                    slotIndex.put(product.getId(), slotCount);
+                    slotCount++;
+                }
+            }
+            indexLoaded = true;
+            knownGeneration = FileHandler.nextGeneration(path);
+        } finally {
+            hold.close();
+        }
+    }
+
+    // Thêm mới hoặc ghi đè ô của sản phẩm có cùng ID
+    public void put(Product product) throws IOException {
+        ByteBuffer data = encode(product);
+        write(channel -> {
+            Integer slot = slotIndex.get(product.getId());
+            if (slot == null) {
+                slot = freeSlots.isEmpty() ? slotCount++ : freeSlots.poll();
+                slotIndex.put(product.getId(), slot);
+            }
+            channel.write(data, slotPosition(slot));
+            return true;
+        });
+    }
+
+    public boolean remove(String id) throws IOException {
+        return write(channel -> {
+            Integer slot = slotIndex.remove(id);
+            if (slot == null) {
+                return false;
+            }
+            channel.write(ByteBuffer.wrap(new byte[SLOT_SIZE]), slotPosition(slot));
+            freeSlots.add(slot);
+            return true;
+        });
+    }
+
+    // Ghi số lượng mới trực tiếp vào ô của sản phẩm, không đụng tới các ô khác
+    public boolean updateQuantity(String id, int quantity) throws IOException {
+        return updateQuantities(Map.of(id, quantity)) > 0;
+    }
+
+    // Ghi số lượng mới của nhiều sản phẩm trong một lần mở file; trả về số ô đã ghi
+    public int updateQuantities(Map<String, Integer> quantities) throws IOException {
+        return write(channel -> {
+            int written = 0;
+            ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
+            for (Map.Entry<String, Integer> entry : quantities.entrySet()) {
+                Integer slot = slotIndex.get(entry.getKey());
+                if (slot == null) {
+                    continue;
+                }
+                buffer.clear();
+                buffer.putInt(entry.getValue()).flip();
+                channel.write(buffer, slotPosition(slot) + QUANTITY_OFFSET);
+                written++;
+            }
+            return written;
+        });
+    }
+
+    private <R> R write(StoreWrite<R> action) throws IOException {
+        ProcessFileLock.Hold hold = FileHandler.lockFor(path).lockExclusive();
+        try {
+            if (!indexLoaded || FileHandler.generation(path) != knownGeneration) {
+                readAll();
+            }
+            R result;
+            try (FileChannel channel = openForWrite()) {
+                result = action.apply(channel);
+            }
+            knownGeneration = FileHandler.nextGeneration(path);
+            return result;
+        } finally {
+            hold.close();
+        }
+    }
+
+    private FileChannel openForWrite() throws IOException {
+        boolean isNew = !Files.exists(path);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (isNew) {
+            writeHeader(channel);
+        }
+        return channel;
+    }
+
+    private static long slotPosition(int slot) {
+        return HEADER_SIZE + (long) slot * SLOT_SIZE;
+    }
+
+    private static void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(SLOT_SIZE).putInt(0);
+        header.flip();
+        channel.write(header, 0);
+    }
+
+    private static void readHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(channel, header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION || header.getInt() != SLOT_SIZE) {
+            throw new IOException("File kho san pham khong dung dinh dang");
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("File kho san pham bi cat ngang");
+            }
+        }
+    }
+
+    private static ByteBuffer encode(Product product) {
+        ByteBuffer slot = ByteBuffer.allocate(SLOT_SIZE);
+        String[] fields;
+        if (product instanceof Computer) {
+            Computer computer = (Computer) product;
+            slot.put(TYPE_OFFSET, TYPE_COMPUTER);
+            fields = new String[] {product.getId(), product.getName(),
+                computer.getCpu(), computer.getRam(), computer.getHardDrive()};
+        } else if (product instanceof Accessory) {
+            slot.put(TYPE_OFFSET, TYPE_ACCESSORY);
+            fields = new String[] {product.getId(), product.getName(),
+                ((Accessory) product).getType(), "", ""};
+        } else {
+            throw new IllegalArgumentException("Loai san pham khong duoc ho tro!");
+        }
+        slot.putInt(QUANTITY_OFFSET, product.getQuantity());
+        slot.putDouble(PRICE_OFFSET, product.getPrice());
+
+        slot.position(FIELDS_OFFSET);
+        for (int i = 0; i < fields.length; i++) {
+            byte[] bytes = (fields[i] == null ? "" : fields[i]).getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > FIELD_LIMITS[i]) {
+                throw new IllegalArgumentException("Thong tin san pham qua dai: " + fields[i]);
+            }
+            slot.putShort((short) bytes.length);
+            slot.put(bytes);
+            slot.position(slot.position() + FIELD_LIMITS[i] - bytes.length);
+        }
+        slot.clear();
+        return slot;
+    }
+
+    private static Product decode(ByteBuffer slot) {
+        byte type = slot.get(TYPE_OFFSET);
+        if (type == TYPE_EMPTY) {
+            return null;
+        }
+        int quantity = slot.getInt(QUANTITY_OFFSET);
+        double price = slot.getDouble(PRICE_OFFSET);
+
+        String[] fields = new String[FIELD_LIMITS.length];
+        slot.position(FIELDS_OFFSET);
+        for (int i = 0; i < fields.length; i++) {
+            int length = slot.getShort();
+            fields[i] = new String(slot.array(), slot.position(), length, StandardCharsets.UTF_8);
+            slot.position(slot.position() + FIELD_LIMITS[i]);
+        }
+
+        if (type == TYPE_COMPUTER) {
+            return new Computer(fields[0], fields[1], price, quantity, fields[2], fields[3], fields[4]);
+        }
+        return new Accessory(fields[0], fields[1], price, quantity, fields[2]);
+    }
+
+    private interface StoreWrite<R> {
+        R apply(FileChannel channel) throws IOException;
+    }
+}
@@ -0,0 +1,214 @@
+package utils;
+
+// Duyệt các trường "Khóa: giá trị" của một dòng dạng "Loai [ID: ..., Name: ..., ...]" ngay trên
+// CharSequence gốc, không tách chuỗi thành mảng trung gian. Chỉ tạo String khi gọi value().
+//
+// Một trường kết thúc tại dấu phẩy đứng trước một khóa mới ("..., Key:"), nên giá trị có dấu
+// phẩy như "1,000" hay "Nguyen, Van A" vẫn đọc đúng. Giá trị bắt đầu bằng dấu " là giá trị
+// được bọc nháy (xem models.RecordFormat.quote()), bên trong dùng \" và \\ để thoát ký tự.
+//
+// Đối tượng giữ trạng thái của dòng đang đọc nên mỗi luồng cần một cursor riêng.
+public class RecordCursor {
+    private final StringBuilder scratch = new StringBuilder();
+    private CharSequence text;
+    private int limit;
+    private int next;
+    private int keyStart;
+    private int keyEnd;
+    private int valueStart;
+    private int valueEnd;
+    private boolean quoted;
+
+    // Đặt cursor vào phần nằm giữa dấu [ đầu tiên và dấu ] cuối cùng của dòng
+    public boolean reset(CharSequence line) {
+        int open = -1;
+        int close = -1;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '[' && open < 0) {
+                open = i;
+            } else if (c == ']') {
+                close = i;
+            }
+        }
+        if (open < 0 || close < open) {
+            this.text = null;
+            return false;
+        }
+        this.text = line;
+        this.next = open + 1;
+        this.limit = close;
+        return true;
+    }
+
+    // Chuyển sang trường tiếp theo, trả về false khi đã hết trường
+    public boolean nextField() {
+        if (text == null) {
+            return false;
+        }
+        int p = skipSpaces(next);
+        if (p >= limit) {
+            return false;
+        }
+
+        keyStart = p;
+        while (p < limit && text.charAt(p) != ':') {
+            p++;
+        }
+        if (p >= limit) {
+            next = limit;
+            return false;
+        }
+        keyEnd = trimEnd(keyStart, p);
+        p = skipSpaces(p + 1);
+
+        if (p < limit && text.charAt(p) == '"') {
+            quoted = true;
+            valueStart = p + 1;
+            p = valueStart;
+            while (p < limit && text.charAt(p) != '"') {
+                p += text.charAt(p) == '\\' ? 2 : 1;
+            }
+            valueEnd = Math.min(p, limit);
+            p = Math.min(p + 1, limit);
+        } else {
+            quoted = false;
+            valueStart = p;
+        }
+
+        int separator = findSeparator(p);
+        int end = separator < 0 ? limit : separator;
+        if (!quoted) {
+            valueEnd = trimEnd(valueStart, end);
+        }
+        next = separator < 0 ? limit : separator + 1;
+        return true;
+    }
+
+    public boolean keyIs(String key) {
+        if (keyEnd - keyStart != key.length()) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (text.charAt(keyStart + i) != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String value() {
+        if (!quoted) {
+            return text.subSequence(valueStart, valueEnd).toString();
+        }
+        scratch.setLength(0);
+        for (int i = valueStart; i < valueEnd; i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < valueEnd) {
+                c = text.charAt(++i);
+            }
+            scratch.append(c);
+        }
+        return scratch.toString();
+    }
+
+    // Đọc số nguyên, bỏ qua dấu phẩy ngăn cách hàng nghìn
+    public int intValue() {
+        long value = longValue(valueStart, valueEnd, false);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("So qua lon: " + value());
+        }
+        return (int) value;
+    }
+
+    // Đọc số thực dạng "1,234,567" hoặc "1234.5", bỏ qua dấu phẩy ngăn cách hàng nghìn
+    public double doubleValue() {
+        int dot = -1;
+        for (int i = valueStart; i < valueEnd; i++) {
+            if (text.charAt(i) == '.') {
+                dot = i;
+                break;
+            }
+        }
+        if (dot < 0) {
+            return longValue(valueStart, valueEnd, false);
+        }
+        double whole = longValue(valueStart, dot, true);
+        double fraction = 0;
+        double scale = 1;
+        for (int i = dot + 1; i < valueEnd; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("Gia tri khong phai so: " + value());
+            }
+            fraction = fraction * 10 + (c - '0');
+            scale *= 10;
+        }
+        boolean negative = valueStart < valueEnd && text.charAt(valueStart) == '-';
+        return negative ? whole - fraction / scale : whole + fraction / scale;
+    }
+
+    private long longValue(int from, int to, boolean allowEmptyDigits) {
+        int p = from;
+        boolean negative = p < to && text.charAt(p) == '-';
+        if (negative) {
+            p++;
+        }
+        long result = 0;
+        boolean digits = false;
+        for (; p < to; p++) {
+            char c = text.charAt(p);
+            if (c == ',') {
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("Gia tri khong phai so: " + value());
+            }
+            result = result * 10 + (c - '0');
+            digits = true;
+        }
+        if (!digits && !allowEmptyDigits) {
+            throw new NumberFormatException("Gia tri khong phai so: " + value());
+        }
+        return negative ? -result : result;
+    }
+
+    // Dấu phẩy là ranh giới trường khi theo sau là một khóa: chữ cái/khoảng trắng rồi dấu ":"
+    private int findSeparator(int from) {
+        for (int i = from; i < limit; i++) {
+            if (text.charAt(i) == ',' && startsKey(i + 1)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean startsKey(int p) {
+        p = skipSpaces(p);
+        int start = p;
+        for (; p < limit; p++) {
+            char c = text.charAt(p);
+            if (c == ':') {
+                return p > start;
+            }
+            if (!((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || c == ' ')) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private int skipSpaces(int p) {
+        while (p < limit && text.charAt(p) == ' ') {
+            p++;
+        }
+        return p;
+    }
+
+    private int trimEnd(int start, int end) {
+        while (end > start && text.charAt(end - 1) == ' ') {
+            end--;
+        }
+        return end;
+    }
+}
@@ -0,0 +1,116 @@
+package utils;
+
+import models.Accessory;
+import models.Computer;
+import models.Customer;
+import models.Employee;
+import java.util.regex.Pattern;
+
+// Dựng đối tượng từ một dòng của products.txt, customers.txt, employees.txt bằng RecordCursor.
+// Trường thiếu nhận giá trị mặc định ("" hoặc 0); mỗi luồng cần một parser riêng
+public class RecordParser {
+    private static final Pattern HAS_LETTER = Pattern.compile(".*[a-zA-Z].*");
+    private static final Pattern DIGITS_ONLY = Pattern.compile("\\d+");
+
+    private final RecordCursor cursor = new RecordCursor();
+
+    public Computer parseComputer(CharSequence line) {
+        try {
+            if (!cursor.reset(line)) {
+                return null;
+            }
+            String id = "", name = "", cpu = "", ram = "", hardDrive = "";
+            double price = 0;
+            int quantity = 0;
+            while (cursor.nextField()) {
+                if (cursor.keyIs("ID")) id = cursor.value();
+                else if (cursor.keyIs("Name")) name = cursor.value();
+                else if (cursor.keyIs("Price")) price = cursor.doubleValue();
+                else if (cursor.keyIs("Quantity")) quantity = cursor.intValue();
+                else if (cursor.keyIs("CPU")) cpu = cursor.value();
+                else if (cursor.keyIs("RAM")) ram = cursor.value();
+                else if (cursor.keyIs("Hard Drive")) hardDrive = cursor.value();
+            }
+            return new Computer(id, name, price, quantity, cpu, ram, hardDrive);
+        } catch (Exception e) {
+            System.err.println("Lỗi khi parse Computer: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public Accessory parseAccessory(CharSequence line) {
+        try {
+            if (!cursor.reset(line)) {
+                return null;
+            }
+            String id = "", name = "", type = "";
+            double price = 0;
+            int quantity = 0;
+            while (cursor.nextField()) {
+                if (cursor.keyIs("ID")) id = cursor.value();
+                else if (cursor.keyIs("Name")) name = cursor.value();
+                else if (cursor.keyIs("Price")) price = cursor.doubleValue();
+                else if (cursor.keyIs("Quantity")) quantity = cursor.intValue();
+                else if (cursor.keyIs("Type")) type = cursor.value();
+            }
+            return new Accessory(id, name, price, quantity, type);
+        } catch (Exception e) {
+            System.err.println("Lỗi khi parse Accessory: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public Customer parseCustomer(CharSequence line) {
+        try {
+            if (!cursor.reset(line)) {
+                return null;
+            }
+            String id = "", name = "", address = "", phone = "";
+            while (cursor.nextField()) {
+                if (cursor.keyIs("ID")) id = cursor.value();
+                else if (cursor.keyIs("Name")) name = cursor.value();
+                else if (cursor.keyIs("Address")) address = cursor.value();
+                else if (cursor.keyIs("Phone")) phone = cursor.value();
+            }
+
+            // Kiểm tra nếu phone chứa chữ và address chứa số, đổi chỗ cho nhau
+            if (HAS_LETTER.matcher(phone).matches() && DIGITS_ONLY.matcher(address).matches()) {
+                String temp = phone;
+                phone = address;
+                address = temp;
+            }
+
+            return new Customer(id, name, address, phone);
+        } catch (Exception e) {
+            System.err.println("Lỗi khi parse Customer: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public Employee parseEmployee(CharSequence line) {
+        try {
+            if (!cursor.reset(line)) {
+                return null;
+            }
+            String id = "", name = "", phone = "", address = "", position = "";
+            double basicSalary = 0;
+            boolean hasSalary = false;
+            while (cursor.nextField()) {
+                if (cursor.keyIs("ID")) id = cursor.value();
+                else if (cursor.keyIs("Name")) name = cursor.value();
+                else if (cursor.keyIs("Phone")) phone = cursor.value();
+                else if (cursor.keyIs("Address")) address = cursor.value();
+                else if (cursor.keyIs("Position")) position = cursor.value();
+                else if (cursor.keyIs("Basic Salary") && !hasSalary) {
+                    // Giữ giá trị đầu tiên nếu dòng lỡ có hai trường lương
+                    basicSalary = cursor.doubleValue();
+                    hasSalary = true;
+                }
+            }
+            return new Employee(id, name, phone, address, position, basicSalary);
+        } catch (Exception e) {
+            System.err.println("Lỗi khi parse Employee: " + e.getMessage());
+            return null;
+        }
+    }
+}
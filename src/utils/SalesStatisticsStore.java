@@ -0,0 +1,367 @@
+package utils;
+
+import interfaces.SystemInterfaces.ByteSource;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Số liệu thống kê bán hàng của một file hóa đơn được cộng dồn sẵn thay vì parse lại mỗi lần xem.
+// Ảnh chụp (.stats) ghi lại số byte của file hóa đơn đã được tính; lần sau chỉ cần
+// đọc tiếp phần hóa đơn mới ghi thêm. Nếu file hóa đơn bị ghi đè thì tính lại từ đầu.
+// Ảnh chụp chỉ được ghi khi giữ khóa ghi của nó (FileHandler.lockFor); tiến trình khác đã ghi ảnh chụp
+// (số thế hệ đổi) thì đọc lại ảnh chụp đó rồi mới tính tiếp.
+public class SalesStatisticsStore {
+    private static final int MAGIC = 0x53544154; // "STAT"
+    private static final int VERSION = 1;
+    // Số byte cuối của phần đã tính được lưu lại để phát hiện file bị ghi đè
+    private static final int SIGNATURE_SIZE = 64;
+    // Ghi ảnh chụp sau mỗi chừng này hóa đơn mới
+    private static final int SAVE_EVERY = 50;
+
+    private final ByteSource data;
+    private final Path snapshotPath;
+
+    private double totalRevenue = 0;
+    private long totalProducts = 0;
+    private final Map<String, ProductSalesStats> productSales = new HashMap<>();
+    private final Map<String, PartyStats> customerStats = new HashMap<>();
+    private final Map<String, PartyStats> employeeStats = new HashMap<>();
+
+    private long coveredSize = 0;
+    private byte[] signature = new byte[0];
+    private boolean loaded = false;
+    private int unsavedInvoices = 0;
+    // Số thế hệ của ảnh chụp ứng với số liệu đang có
+    private long knownGeneration = -1;
+
+    public SalesStatisticsStore(ByteSource data, Path snapshotPath) {
+        this.data = data;
+        this.snapshotPath = snapshotPath;
+    }
+
+    public double getTotalRevenue() { return totalRevenue; }
+    public long getTotalProducts() { return totalProducts; }
+    public Collection<ProductSalesStats> getProductSales() { return productSales.values(); }
+    public Collection<PartyStats> getCustomerStats() { return customerStats.values(); }
+    public Collection<PartyStats> getEmployeeStats() { return employeeStats.values(); }
+
+    // Gộp số liệu của nhiều file hóa đơn (các phân vùng theo tháng).
+    // Kết quả chỉ để đọc, không gắn với file nào nên không gọi refresh/save được
+    public static SalesStatisticsStore combine(Collection<SalesStatisticsStore> parts) {
+        SalesStatisticsStore combined = new SalesStatisticsStore(null, null);
+        for (SalesStatisticsStore part : parts) {
+            combined.totalRevenue += part.totalRevenue;
+            combined.totalProducts += part.totalProducts;
+            for (ProductSalesStats stats : part.productSales.values()) {
+                ProductSalesStats total = combined.productSales.computeIfAbsent(stats.productId,
+                    id -> new ProductSalesStats(id, stats.productName));
+                total.totalQuantity += stats.totalQuantity;
+                total.totalRevenue += stats.totalRevenue;
+            }
+            mergeParties(combined.customerStats, part.customerStats);
+            mergeParties(combined.employeeStats, part.employeeStats);
+        }
+        return combined;
+    }
+
+    private static void mergeParties(Map<String, PartyStats> target, Map<String, PartyStats> source) {
+        for (PartyStats stats : source.values()) {
+            PartyStats total = target.computeIfAbsent(stats.id, PartyStats::new);
+            total.invoiceCount += stats.invoiceCount;
+            total.totalAmount += stats.totalAmount;
+        }
+    }
+
+    // Đưa số liệu về khớp với file hóa đơn: chỉ đọc phần hóa đơn chưa được tính
+    public synchronized void refresh() throws IOException {
+        if (loaded && FileHandler.generation(snapshotPath) == knownGeneration
+                && data.size() == coveredSize && signatureMatches()) {
+            return;
+        }
+        ProcessFileLock.Hold hold = FileHandler.lockFor(snapshotPath).lockExclusive();
+        try {
+            long generation = FileHandler.generation(snapshotPath);
+            if (!loaded || generation != knownGeneration) {
+                knownGeneration = generation;
+                loadSnapshot();
+                loaded = true;
+            }
+            long size = data.size();
+            if (size == coveredSize && signatureMatches()) {
+                return;
+            }
+            if (size < coveredSize || !signatureMatches()) {
+                reset();
+            }
+            boolean rebuilt = coveredSize == 0;
+            unsavedInvoices += scanFrom(coveredSize);
+            if (rebuilt || unsavedInvoices >= SAVE_EVERY) {
+                save();
+            }
+        } finally {
+            hold.close();
+        }
+    }
+
+    public synchronized void save() throws IOException {
+        ProcessFileLock.Hold hold = FileHandler.lockFor(snapshotPath).lockExclusive();
+        try {
+            saveLocked();
+            knownGeneration = FileHandler.nextGeneration(snapshotPath);
+        } finally {
+            hold.close();
+        }
+    }
+
+    // File tạm dùng chung tên giữa các tiến trình nên chỉ được ghi khi đang giữ khóa ghi
+    private void saveLocked() throws IOException {
+        Path temp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(coveredSize);
+            out.writeInt(signature.length);
+            out.write(signature);
+            out.writeDouble(totalRevenue);
+            out.writeLong(totalProducts);
+
+            out.writeInt(productSales.size());
+            for (ProductSalesStats stats : productSales.values()) {
+                out.writeUTF(stats.productId);
+                out.writeUTF(stats.productName);
+                out.writeLong(stats.totalQuantity);
+                out.writeDouble(stats.totalRevenue);
+            }
+            writeParties(out, customerStats);
+            writeParties(out, employeeStats);
+        }
+        // Thay file cũ bằng một thao tác đổi tên để không bao giờ để lại ảnh chụp ghi dở
+        Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        unsavedInvoices = 0;
+    }
+
+    private void loadSnapshot() {
+        reset();
+        unsavedInvoices = 0;
+        if (!Files.exists(snapshotPath)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(snapshotPath)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            long covered = in.readLong();
+            byte[] sig = new byte[in.readInt()];
+            in.readFully(sig);
+            double revenue = in.readDouble();
+            long products = in.readLong();
+
+            int productCount = in.readInt();
+            for (int i = 0; i < productCount; i++) {
+                ProductSalesStats stats = new ProductSalesStats(in.readUTF(), in.readUTF());
+                stats.totalQuantity = in.readLong();
+                stats.totalRevenue = in.readDouble();
+                productSales.put(stats.productId, stats);
+            }
+            readParties(in, customerStats);
+            readParties(in, employeeStats);
+
+            coveredSize = covered;
+            signature = sig;
+            totalRevenue = revenue;
+            totalProducts = products;
+        } catch (IOException e) {
+            // Ảnh chụp hỏng thì tính lại từ đầu
+            reset();
+        }
+    }
+
+    private void reset() {
+        totalRevenue = 0;
+        totalProducts = 0;
+        productSales.clear();
+        customerStats.clear();
+        employeeStats.clear();
+        coveredSize = 0;
+        signature = new byte[0];
+    }
+
+    private boolean signatureMatches() throws IOException {
+        if (coveredSize == 0) {
+            return true;
+        }
+        if (data.size() < coveredSize) {
+            return false;
+        }
+        return Arrays.equals(signature, readSignature(coveredSize));
+    }
+
+    private byte[] readSignature(long end) throws IOException {
+        int length = (int) Math.min(SIGNATURE_SIZE, end);
+        return data.read(end - length, length);
+    }
+
+    // Cộng dồn các hóa đơn từ vị trí start; một hóa đơn chỉ được tính khi đã đọc tới dòng "Tong tien:"
+    private int scanFrom(long start) throws IOException {
+        if (data.size() == 0) {
+            return 0;
+        }
+        int added = 0;
+        try (OffsetLineReader reader = new OffsetLineReader(data.openFrom(start), start)) {
+            String customerId = null;
+            String employeeId = null;
+            List<String[]> pendingItems = new ArrayList<>();
+
+            String line;
+            while ((line = reader.readLine()) != null && reader.isTerminated()) {
+                line = line.trim();
+                if (line.contains("Invoice [")) {
+                    customerId = null;
+                    employeeId = null;
+                    pendingItems.clear();
+                } else if (line.contains("Khach hang:")) {
+                    customerId = line.substring(line.indexOf(":") + 1).trim().split("-")[0].trim();
+                } else if (line.contains("Nhan vien:")) {
+                    employeeId = line.substring(line.indexOf(":") + 1).trim().split("-")[0].trim();
+                } else if (line.contains("(Ma:")) {
+                    String[] item = parseItem(line);
+                    if (item != null) {
+                        pendingItems.add(item);
+                    }
+                } else if (line.startsWith("Tong tien:")) {
+                    try {
+                        double invoiceTotal = Double.parseDouble(line.substring(line.indexOf(":") + 1)
+                            .replace("VND", "").replace(",", "").trim());
+                        addInvoice(customerId, employeeId, pendingItems, invoiceTotal);
+                        added++;
+                    } catch (NumberFormatException e) {
+                        System.err.println("Loi khi xu ly tong tien: " + e.getMessage());
+                    }
+                    customerId = null;
+                    employeeId = null;
+                    pendingItems.clear();
+                    coveredSize = reader.position();
+                }
+            }
+        }
+        if (coveredSize > 0) {
+            signature = readSignature(coveredSize);
+        }
+        return added;
+    }
+
+    // Trả về {mã, tên, số lượng, thành tiền} hoặc null nếu dòng lỗi
+    private static String[] parseItem(String line) {
+        try {
+            // Tên và mã có thể chứa chữ "x" nên chỉ tìm "x" sau dấu ")" đóng phần mã
+            int codeStart = line.indexOf("(Ma:");
+            int codeEnd = line.indexOf(")", codeStart);
+            int quantityStart = line.indexOf("x", codeEnd) + 1;
+            int quantityEnd = line.indexOf(":", quantityStart);
+            if (codeStart < 2 || codeEnd < 0 || quantityStart <= 0 || quantityEnd < 0) {
+                throw new IllegalArgumentException("Dong san pham khong hop le: " + line);
+            }
+            String productName = line.substring(2, codeStart).trim();
+            String productId = line.substring(codeStart + 4, codeEnd).trim();
+            String quantity = line.substring(quantityStart, quantityEnd).trim();
+            String price = line.substring(quantityEnd + 1).replace("VND", "").replace(",", "").trim();
+            Integer.parseInt(quantity);
+            Double.parseDouble(price);
+            return new String[] {productId, productName, quantity, price};
+        } catch (Exception e) {
+            System.err.println("Loi khi xu ly chi tiet san pham: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void addInvoice(String customerId, String employeeId, List<String[]> items, double invoiceTotal) {
+        for (String[] item : items) {
+            int quantity = Integer.parseInt(item[2]);
+            double price = Double.parseDouble(item[3]);
+            totalProducts += quantity;
+            productSales.computeIfAbsent(item[0], k -> new ProductSalesStats(item[0], item[1]))
+                .addSale(quantity, price);
+        }
+        totalRevenue += invoiceTotal;
+        if (customerId != null) {
+            customerStats.computeIfAbsent(customerId, PartyStats::new).addInvoice(invoiceTotal);
+        }
+        if (employeeId != null) {
+            employeeStats.computeIfAbsent(employeeId, PartyStats::new).addInvoice(invoiceTotal);
+        }
+    }
+
+    private static void writeParties(DataOutputStream out, Map<String, PartyStats> parties) throws IOException {
+        out.writeInt(parties.size());
+        for (PartyStats stats : parties.values()) {
+            out.writeUTF(stats.id);
+            out.writeInt(stats.invoiceCount);
+            out.writeDouble(stats.totalAmount);
+        }
+    }
+
+    private static void readParties(DataInputStream in, Map<String, PartyStats> parties) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            PartyStats stats = new PartyStats(in.readUTF());
+            stats.invoiceCount = in.readInt();
+            stats.totalAmount = in.readDouble();
+            parties.put(stats.id, stats);
+        }
+    }
+
+    public static class ProductSalesStats {
+        private final String productId;
+        private final String productName;
+        private long totalQuantity = 0;
+        private double totalRevenue = 0;
+
+        public ProductSalesStats(String productId, String productName) {
+            this.productId = productId;
+            this.productName = productName;
+        }
+
+        public void addSale(int quantity, double subtotal) {
+            this.totalQuantity += quantity;
+            this.totalRevenue += subtotal;
+        }
+
+        public String getProductId() { return productId; }
+        public String getProductName() { return productName; }
+        public long getTotalQuantity() { return totalQuantity; }
+        public double getTotalRevenue() { return totalRevenue; }
+    }
+
+    // Số liệu theo khách hàng hoặc nhân viên, chỉ lưu mã để tên luôn lấy theo dữ liệu hiện tại
+    public static class PartyStats {
+        private final String id;
+        private int invoiceCount = 0;
+        private double totalAmount = 0;
+
+        public PartyStats(String id) {
+            this.id = id;
+        }
+
+        public void addInvoice(double amount) {
+            invoiceCount++;
+            totalAmount += amount;
+        }
+
+        public String getId() { return id; }
+        public int getInvoiceCount() { return invoiceCount; }
+        public double getTotalAmount() { return totalAmount; }
+    }
+}
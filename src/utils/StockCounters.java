@@ -0,0 +1,99 @@
+package utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bộ đếm tồn kho không khóa cho nhiều quầy bán cùng lúc. Mỗi sản phẩm có một AtomicLong gói cả
+// số tồn (32 bit cao) và số đang giữ cho các hóa đơn chưa chốt (32 bit thấp), nên kiểm tra
+// "còn đủ hàng" và giữ hàng là một lần compareAndSet: hai quầy cùng bán món cuối cùng thì chỉ
+// một quầy giữ được, quầy kia thấy không đủ hàng mà không luồng nào phải chờ khóa.
+public class StockCounters {
+    private final ConcurrentHashMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    // Đặt số tồn theo dữ liệu vừa nạp hoặc vừa sửa tay, giữ nguyên phần đang giữ của các phiên chưa chốt
+    public void sync(String id, int onHand) {
+        AtomicLong counter = counters.computeIfAbsent(id, key -> new AtomicLong());
+        long current;
+        do {
+            current = counter.get();
+        } while (!counter.compareAndSet(current, pack(onHand, reserved(current))));
+    }
+
+    public void remove(String id) {
+        counters.remove(id);
+    }
+
+    public int onHand(String id) {
+        AtomicLong counter = counters.get(id);
+        return counter == null ? 0 : onHand(counter.get());
+    }
+
+    public int reserved(String id) {
+        AtomicLong counter = counters.get(id);
+        return counter == null ? 0 : reserved(counter.get());
+    }
+
+    public int available(String id) {
+        AtomicLong counter = counters.get(id);
+        if (counter == null) {
+            return 0;
+        }
+        long current = counter.get();
+        return onHand(current) - reserved(current);
+    }
+
+    // Giữ quantity sản phẩm nếu phần chưa bị giữ còn đủ
+    public boolean reserve(String id, int quantity) {
+        AtomicLong counter = counters.get(id);
+        if (counter == null) {
+            return false;
+        }
+        long current;
+        do {
+            current = counter.get();
+            if (onHand(current) - reserved(current) < quantity) {
+                return false;
+            }
+        } while (!counter.compareAndSet(current, pack(onHand(current), reserved(current) + quantity)));
+        return true;
+    }
+
+    // Trả lại phần đã giữ mà không bán
+    public void release(String id, int quantity) {
+        update(id, 0, -quantity);
+    }
+
+    // Phần đã giữ được bán: trừ cả số tồn lẫn số đang giữ trong cùng một lần cập nhật
+    public void commit(String id, int quantity) {
+        update(id, -quantity, -quantity);
+    }
+
+    // Nhập thêm hoặc nhận lại hàng
+    public void add(String id, int quantity) {
+        update(id, quantity, 0);
+    }
+
+    private void update(String id, int onHandDelta, int reservedDelta) {
+        AtomicLong counter = counters.get(id);
+        if (counter == null) {
+            return;
+        }
+        long current;
+        do {
+            current = counter.get();
+        } while (!counter.compareAndSet(current, pack(onHand(current) + onHandDelta,
+            Math.max(0, reserved(current) + reservedDelta))));
+    }
+
+    private static long pack(int onHand, int reserved) {
+        return ((long) onHand << 32) | (reserved & 0xFFFFFFFFL);
+    }
+
+    private static int onHand(long value) {
+        return (int) (value >>> 32);
+    }
+
+    private static int reserved(long value) {
+        return (int) value;
+    }
+}
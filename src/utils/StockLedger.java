@@ -0,0 +1,494 @@
+package utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+// Sổ kho: mọi thay đổi tồn kho được ghi nối thành sự kiện (nhập hàng, bán theo hóa đơn, điều chỉnh)
+// vào stock.log, tồn kho là tổng các thay đổi nên luôn dựng lại được nếu products.dat bị hỏng.
+// Định kỳ ghi ảnh chụp tồn kho vào stock.snap (kèm vị trí trong sổ tại thời điểm chụp) để dựng lại
+// chỉ cần cộng các sự kiện sau ảnh chụp gần nhất, và tra tồn kho tại một thời điểm bất kỳ bằng
+// tìm kiếm nhị phân trên thời điểm của các ảnh chụp. Các thao tác trên sổ được tuần tự hóa.
+// Nhiều tiến trình dùng chung sổ: đọc giữ khóa chia sẻ, ghi giữ khóa độc quyền của stock.log
+// (FileHandler.lockFor); trước mỗi thao tác, nếu số thế hệ của sổ đã đổi thì đọc tiếp phần sổ và
+// phần ảnh chụp mà tiến trình khác vừa ghi thêm, nên vị trí cuối sổ và danh sách ảnh chụp luôn đúng.
+public class StockLedger {
+    public static final byte RECEIPT = 1;
+    public static final byte SALE = 2;
+    public static final byte ADJUSTMENT = 3;
+
+    private static final int LOG_MAGIC = 0x534C4F47; // "SLOG"
+    private static final int SNAPSHOT_MAGIC = 0x534E4150; // "SNAP"
+    // Chụp lại sau ít nhất chừng này sự kiện, và không ít hơn số sản phẩm trong ảnh chụp trước,
+    // để tổng dung lượng các ảnh chụp không vượt quá dung lượng sổ
+    private static final int SNAPSHOT_EVERY = 10_000;
+
+    private final Path logPath;
+    private final Path snapshotPath;
+    // Theo thứ tự thời gian: thời điểm chụp, vị trí trong sổ, vị trí ảnh chụp trong stock.snap, số sản phẩm
+    private final List<long[]> snapshots = new ArrayList<>();
+    private long logSize = 0;
+    // Độ dài phần stock.snap gồm các ảnh chụp đã đọc
+    private long snapshotFileSize = 0;
+    private int eventsSinceSnapshot = 0;
+    // Số thế hệ của sổ ứng với trạng thái trên; khác số trên đĩa là tiến trình khác đã ghi
+    private long knownGeneration = -1;
+    private boolean opened = false;
+
+    public StockLedger(Path logPath, Path snapshotPath) {
+        this.logPath = logPath;
+        this.snapshotPath = snapshotPath;
+    }
+
+    // Mở sổ; lần đầu (chưa có sổ) thì lấy tồn kho hiện tại làm ảnh chụp đầu kỳ
+    public synchronized void open(Supplier<Map<String, Integer>> openingBalances) throws IOException {
+        if (opened) {
+            return;
+        }
+        ProcessFileLock.Hold hold = FileHandler.lockFor(logPath).lockExclusive();
+        try {
+            openLocked(openingBalances);
+        } finally {
+            hold.close();
+        }
+        opened = true;
+    }
+
+    private void openLocked(Supplier<Map<String, Integer>> openingBalances) throws IOException {
+        if (!Files.exists(logPath)) {
+            // Chỉ tạo sổ mới khi chưa có sổ; ảnh chụp cũ (nếu còn) không còn khớp với sổ nào
+            Files.deleteIfExists(snapshotPath);
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(logPath.toFile()))) {
+                out.writeInt(LOG_MAGIC);
+            }
+            logSize = Integer.BYTES;
+            snapshots.clear();
+            snapshotFileSize = 0;
+            writeSnapshot(System.currentTimeMillis(), logSize, openingBalances.get());
+        } else {
+            logSize = completeLogSize();
+            // Cắt bỏ sự kiện ghi dở (nếu có) của lần chạy trước để ghi nối tiếp cho đúng
+            truncate(logPath, logSize);
+            snapshots.clear();
+            snapshotFileSize = 0;
+            if (Files.exists(snapshotPath)) {
+                loadSnapshotIndex();
+                if (snapshots.isEmpty()) {
+                    throw new IOException("So kho khong co anh chup dau ky: " + snapshotPath);
+                }
+                truncate(snapshotPath, snapshotFileSize);
+            } else {
+                recoverOpeningSnapshot(openingBalances.get());
+            }
+            eventsSinceSnapshot = countEvents(snapshots.get(snapshots.size() - 1)[1], logSize);
+        }
+        // Báo cho tiến trình khác đọc lại sổ (sổ có thể vừa được tạo hoặc vừa được cắt)
+        knownGeneration = FileHandler.nextGeneration(logPath);
+    }
+
+    // Đọc tiếp phần sổ và ảnh chụp mà tiến trình khác đã ghi thêm kể từ lần đồng bộ trước.
+    // Gọi khi đang giữ khóa của sổ
+    private void sync() throws IOException {
+        long generation = FileHandler.generation(logPath);
+        if (generation == knownGeneration) {
+            return;
+        }
+        long snapshotFile = Files.exists(snapshotPath) ? Files.size(snapshotPath) : 0;
+        if (Files.size(logPath) < logSize || snapshotFile < snapshotFileSize) {
+            // Sổ đã bị tạo lại: đọc lại từ đầu
+            logSize = completeLogSize();
+            snapshots.clear();
+            snapshotFileSize = 0;
+            loadSnapshotIndex();
+            if (snapshots.isEmpty()) {
+                throw new IOException("So kho khong co anh chup dau ky: " + snapshotPath);
+            }
+            eventsSinceSnapshot = countEvents(snapshots.get(snapshots.size() - 1)[1], logSize);
+        } else {
+            int knownSnapshots = snapshots.size();
+            long[] scanned = scanEvents(logSize);
+            logSize = scanned[0];
+            loadSnapshotIndex();
+            if (snapshots.size() > knownSnapshots) {
+                eventsSinceSnapshot = countEvents(snapshots.get(snapshots.size() - 1)[1], logSize);
+            } else {
+                eventsSinceSnapshot += (int) scanned[1];
+            }
+        }
+        knownGeneration = generation;
+    }
+
+    public void append(byte type, String productId, int delta, String reference) throws IOException {
+        append(type, Map.of(productId, delta), reference);
+    }
+
+    // Ghi nhiều sự kiện cùng loại, cùng thời điểm và cùng chứng từ (ví dụ các dòng của một hóa đơn)
+    // trong một lần mở sổ
+    public synchronized void append(byte type, Map<String, Integer> deltas, String reference) throws IOException {
+        requireOpened();
+        if (deltas.isEmpty()) {
+            return;
+        }
+        ProcessFileLock.Hold hold = FileHandler.lockFor(logPath).lockExclusive();
+        try {
+            sync();
+            appendLocked(type, deltas, reference);
+            knownGeneration = FileHandler.nextGeneration(logPath);
+        } finally {
+            hold.close();
+        }
+    }
+
+    private void appendLocked(byte type, Map<String, Integer> deltas, String reference) throws IOException {
+        // Phần thừa sau sự kiện trọn vẹn cuối cùng (ghi dở khi một tiến trình bị tắt) phải bỏ trước khi ghi nối
+        truncate(logPath, logSize);
+        String note = reference == null ? "" : reference;
+        long time = System.currentTimeMillis();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(logPath.toFile(), true), 256 * deltas.size()))) {
+            for (Map.Entry<String, Integer> delta : deltas.entrySet()) {
+                out.writeLong(time);
+                out.writeByte(type);
+                out.writeUTF(delta.getKey());
+                out.writeInt(delta.getValue());
+                out.writeUTF(note);
+            }
+        }
+        for (String productId : deltas.keySet()) {
+            logSize += eventSize(productId, note);
+        }
+        eventsSinceSnapshot += deltas.size();
+        long[] last = snapshots.get(snapshots.size() - 1);
+        if (eventsSinceSnapshot >= Math.max(SNAPSHOT_EVERY, last[3])) {
+            writeSnapshot(System.currentTimeMillis(), logSize, latestQuantities());
+        }
+    }
+
+    // Tồn kho hiện tại theo sổ: ảnh chụp gần nhất cộng các sự kiện sau đó
+    public synchronized Map<String, Integer> currentQuantities() throws IOException {
+        requireOpened();
+        ProcessFileLock.Hold hold = FileHandler.lockFor(logPath).lockShared();
+        try {
+            sync();
+            return latestQuantities();
+        } finally {
+            hold.close();
+        }
+    }
+
+    private Map<String, Integer> latestQuantities() throws IOException {
+        long[] last = snapshots.get(snapshots.size() - 1);
+        Map<String, Integer> quantities = readSnapshot(last[2]);
+        fold(quantities, readEvents(last[1], Long.MAX_VALUE));
+        return quantities;
+    }
+
+    // Dựng lại tồn kho từ đầu sổ: bỏ qua mọi ảnh chụp trừ ảnh chụp đầu kỳ
+    public synchronized Map<String, Integer> rebuild() throws IOException {
+        requireOpened();
+        ProcessFileLock.Hold hold = FileHandler.lockFor(logPath).lockShared();
+        try {
+            sync();
+            long[] first = snapshots.get(0);
+            Map<String, Integer> quantities = readSnapshot(first[2]);
+            fold(quantities, readEvents(first[1], Long.MAX_VALUE));
+            return quantities;
+        } finally {
+            hold.close();
+        }
+    }
+
+    // Tồn kho của một sản phẩm tại thời điểm time, rỗng nếu trước khi mở sổ
+    public synchronized OptionalInt quantityAt(String productId, long time) throws IOException {
+        requireOpened();
+        ProcessFileLock.Hold hold = FileHandler.lockFor(logPath).lockShared();
+        try {
+            sync();
+            return quantityAtLocked(productId, time);
+        } finally {
+            hold.close();
+        }
+    }
+
+    private OptionalInt quantityAtLocked(String productId, long time) throws IOException {
+        int index = snapshotBefore(time);
+        if (index < 0) {
+            return OptionalInt.empty();
+        }
+        long[] snapshot = snapshots.get(index);
+        int quantity = readSnapshot(snapshot[2]).getOrDefault(productId, 0);
+        Events events = readEvents(snapshot[1], time);
+        for (int i = 0; i < events.count; i++) {
+            if (events.productIds[events.products[i]].equals(productId)) {
+                quantity += events.deltas[i];
+            }
+        }
+        return OptionalInt.of(quantity);
+    }
+
+    // Ảnh chụp cuối cùng có thời điểm không sau time, -1 nếu không có
+    private int snapshotBefore(long time) {
+        int low = 0;
+        int high = snapshots.size() - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (snapshots.get(mid)[0] <= time) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    // Cộng dồn song song: mỗi phần của dãy sự kiện cộng vào mảng riêng theo số thứ tự sản phẩm,
+    // các mảng được cộng lại với nhau (phép cộng không phụ thuộc thứ tự nên kết quả như cộng tuần tự)
+    private static void fold(Map<String, Integer> quantities, Events events) {
+        int productCount = events.productIds.length;
+        long[] totals = IntStream.range(0, events.count).parallel().collect(
+            () -> new long[productCount],
+            (sums, i) -> sums[events.products[i]] += events.deltas[i],
+            (left, right) -> {
+                for (int i = 0; i < productCount; i++) {
+                    left[i] += right[i];
+                }
+            });
+        for (int i = 0; i < productCount; i++) {
+            quantities.merge(events.productIds[i], (int) totals[i], Integer::sum);
+        }
+    }
+
+    // Đọc các sự kiện từ vị trí start tới cuối sổ hoặc tới sự kiện đầu tiên sau thời điểm until
+    private Events readEvents(long start, long until) throws IOException {
+        Events events = new Events();
+        Map<String, Integer> ordinals = new HashMap<>();
+        List<String> productIds = new ArrayList<>();
+        try (DataInputStream in = openLog(start)) {
+            long position = start;
+            while (position < logSize) {
+                long time = in.readLong();
+                if (time > until) {
+                    break;
+                }
+                in.readByte();
+                String productId = in.readUTF();
+                int delta = in.readInt();
+                String reference = in.readUTF();
+                position += eventSize(productId, reference);
+                Integer ordinal = ordinals.get(productId);
+                if (ordinal == null) {
+                    ordinal = productIds.size();
+                    ordinals.put(productId, ordinal);
+                    productIds.add(productId);
+                }
+                events.add(ordinal, delta);
+            }
+        }
+        events.productIds = productIds.toArray(new String[0]);
+        return events;
+    }
+
+    private int countEvents(long start, long end) throws IOException {
+        int count = 0;
+        try (DataInputStream in = openLog(start)) {
+            long position = start;
+            while (position < end) {
+                in.readLong();
+                in.readByte();
+                String productId = in.readUTF();
+                in.readInt();
+                String reference = in.readUTF();
+                position += eventSize(productId, reference);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Số byte của phần sổ gồm các sự kiện ghi trọn vẹn; sự kiện ghi dở ở cuối bị bỏ qua
+    private long completeLogSize() throws IOException {
+        try (DataInputStream in = openLog(0)) {
+            if (in.readInt() != LOG_MAGIC) {
+                throw new IOException("So kho khong dung dinh dang: " + logPath);
+            }
+        }
+        return scanEvents(Integer.BYTES)[0];
+    }
+
+    // Từ vị trí start: vị trí cuối sự kiện ghi trọn vẹn cuối cùng và số sự kiện đã đi qua
+    private long[] scanEvents(long start) throws IOException {
+        long position = start;
+        long count = 0;
+        try (DataInputStream in = openLog(start)) {
+            while (true) {
+                in.readLong();
+                in.readByte();
+                String productId = in.readUTF();
+                in.readInt();
+                String reference = in.readUTF();
+                position += eventSize(productId, reference);
+                count++;
+            }
+        } catch (EOFException e) {
+            return new long[] {position, count};
+        }
+    }
+
+    private static void truncate(Path path, long size) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            if (file.length() > size) {
+                file.setLength(size);
+            }
+        }
+    }
+
+    private DataInputStream openLog(long start) throws IOException {
+        InputStream in = Files.newInputStream(logPath);
+        in.skipNBytes(start);
+        return new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+    }
+
+    private static long eventSize(String productId, String reference) {
+        return Long.BYTES + 1 + utfSize(productId) + Integer.BYTES + utfSize(reference);
+    }
+
+    // Số byte writeUTF ghi cho chuỗi s (2 byte độ dài + modified UTF-8)
+    private static int utfSize(String s) {
+        int size = 2;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            size += c >= 0x0001 && c <= 0x007F ? 1 : c <= 0x07FF ? 2 : 3;
+        }
+        return size;
+    }
+
+    // Sổ còn nhưng mất stock.snap: không được tạo sổ mới (mất toàn bộ lịch sử). Tồn kho đầu kỳ được
+    // suy ngược từ tồn kho hiện tại trừ đi tổng các sự kiện trong sổ, nên dựng lại từ sổ cho đúng tồn kho
+    // hiện tại; sai lệch (nếu có) giữa products.dat và sổ trước lúc mất ảnh chụp thì không còn phát hiện được
+    private void recoverOpeningSnapshot(Map<String, Integer> current) throws IOException {
+        System.err.println("Thieu anh chup ton kho " + snapshotPath + ", dung lai anh chup dau ky tu so kho");
+        Map<String, Integer> opening = new HashMap<>(current);
+        Events events = readEvents(Integer.BYTES, Long.MAX_VALUE);
+        for (int i = 0; i < events.count; i++) {
+            opening.merge(events.productIds[events.products[i]], -events.deltas[i], Integer::sum);
+        }
+        long time = System.currentTimeMillis();
+        if (logSize > Integer.BYTES) {
+            try (DataInputStream in = openLog(Integer.BYTES)) {
+                time = in.readLong();
+            }
+        }
+        snapshots.clear();
+        writeSnapshot(time, Integer.BYTES, opening);
+    }
+
+    private void writeSnapshot(long time, long logOffset, Map<String, Integer> quantities) throws IOException {
+        long offset = snapshotFileSize;
+        if (Files.exists(snapshotPath)) {
+            truncate(snapshotPath, offset);
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(snapshotPath.toFile(), true), 64 * 1024))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(time);
+            out.writeLong(logOffset);
+            out.writeInt(quantities.size());
+            for (Map.Entry<String, Integer> entry : quantities.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue());
+            }
+        }
+        snapshots.add(new long[] {time, logOffset, offset, quantities.size()});
+        snapshotFileSize = Files.size(snapshotPath);
+        eventsSinceSnapshot = 0;
+    }
+
+    // Đọc phần đầu của từng ảnh chụp; ảnh chụp ghi dở ở cuối file bị cắt bỏ
+    // Đọc phần đầu của các ảnh chụp từ snapshotFileSize tới cuối stock.snap; ảnh chụp ghi dở ở cuối
+    // không được tính (open cắt bỏ nó khi đang giữ khóa ghi)
+    private void loadSnapshotIndex() throws IOException {
+        long offset = snapshotFileSize;
+        try (InputStream raw = Files.newInputStream(snapshotPath)) {
+            raw.skipNBytes(offset);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(raw, 64 * 1024));
+            while (true) {
+                if (in.readInt() != SNAPSHOT_MAGIC) {
+                    break;
+                }
+                long time = in.readLong();
+                long logOffset = in.readLong();
+                int count = in.readInt();
+                long size = Integer.BYTES + Long.BYTES * 2 + Integer.BYTES;
+                for (int i = 0; i < count; i++) {
+                    size += utfSize(in.readUTF()) + Integer.BYTES;
+                    in.readInt();
+                }
+                snapshots.add(new long[] {time, logOffset, offset, count});
+                offset += size;
+            }
+        } catch (EOFException e) {
+            // Hết file hoặc ảnh chụp cuối ghi dở
+        }
+        snapshotFileSize = offset;
+    }
+
+    private Map<String, Integer> readSnapshot(long offset) throws IOException {
+        try (InputStream raw = Files.newInputStream(snapshotPath)) {
+            raw.skipNBytes(offset);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(raw, 64 * 1024));
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Anh chup ton kho bi hong: " + snapshotPath);
+            }
+            in.readLong();
+            in.readLong();
+            int count = in.readInt();
+            Map<String, Integer> quantities = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                quantities.put(in.readUTF(), in.readInt());
+            }
+            return quantities;
+        }
+    }
+
+    private void requireOpened() {
+        if (!opened) {
+            throw new RuntimeException("So kho chua duoc mo!");
+        }
+    }
+
+    // Dãy sự kiện đã đọc, sản phẩm được đánh số để cộng dồn trên mảng thay vì Map
+    private static class Events {
+        private int[] products = new int[1024];
+        private int[] deltas = new int[1024];
+        private int count = 0;
+        private String[] productIds;
+
+        void add(int product, int delta) {
+            if (count == products.length) {
+                products = Arrays.copyOf(products, count * 2);
+                deltas = Arrays.copyOf(deltas, count * 2);
+            }
+            products[count] = product;
+            deltas[count] = delta;
+            count++;
+        }
+    }
+}
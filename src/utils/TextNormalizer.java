@@ -0,0 +1,39 @@
+package utils;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+// Chuẩn hóa chuỗi để so khớp khi tìm kiếm: bỏ dấu tiếng Việt, chữ thường, chỉ giữ chữ số
+public final class TextNormalizer {
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    private TextNormalizer() {
+    }
+
+    // "Nguyễn Văn Đức" -> "nguyen van duc"
+    public static String fold(String text) {
+        if (text == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return COMBINING_MARKS.matcher(decomposed).replaceAll("")
+            .replace('đ', 'd').replace('Đ', 'D')
+            .toLowerCase(Locale.ROOT);
+    }
+
+    // "090 123-4567" -> "0901234567"
+    public static String digitsOnly(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder digits = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        return digits.toString();
+    }
+}
@@ -0,0 +1,182 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Chỉ mục đảo theo bộ 3 ký tự (trigram) để tìm chuỗi con mà không phải duyệt toàn bộ dữ liệu.
+// Mỗi phần tử (theo ID) có một đoạn văn bản; truy vấn lấy giao các danh sách phần tử chứa từng
+// trigram của từ khóa rồi kiểm tra lại bằng contains. Từ khóa ngắn hơn 3 ký tự thì duyệt tuần tự.
+// Kết quả trả về theo thứ tự phần tử được thêm lần đầu. Không an toàn khi dùng từ nhiều luồng.
+public class TrigramIndex {
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final Map<Long, Posting> postings = new HashMap<>();
+    private final List<String> ids = new ArrayList<>();
+    // Văn bản đã chuẩn hóa theo số thứ tự, null nếu phần tử đã bị xóa
+    private final List<String> texts = new ArrayList<>();
+
+    public void clear() {
+        ordinals.clear();
+        postings.clear();
+        ids.clear();
+        texts.clear();
+    }
+
+    public int size() {
+        return ordinals.size();
+    }
+
+    // Thêm mới hoặc thay văn bản của phần tử; phần tử cũ giữ nguyên thứ tự
+    public void put(String id, String text) {
+        String normalized = normalize(text);
+        Integer existing = ordinals.get(id);
+        int ordinal;
+        if (existing == null) {
+            ordinal = ids.size();
+            ordinals.put(id, ordinal);
+            ids.add(id);
+            texts.add(normalized);
+        } else {
+            ordinal = existing;
+            String old = texts.get(ordinal);
+            if (normalized.equals(old)) {
+                return;
+            }
+            forEachTrigram(old, key -> removePosting(key, ordinal));
+            texts.set(ordinal, normalized);
+        }
+        forEachTrigram(normalized, key -> postings.computeIfAbsent(key, k -> new Posting()).add(ordinal));
+    }
+
+    public void remove(String id) {
+        Integer ordinal = ordinals.remove(id);
+        if (ordinal == null) {
+            return;
+        }
+        String old = texts.get(ordinal);
+        texts.set(ordinal, null);
+        forEachTrigram(old, key -> removePosting(key, ordinal));
+    }
+
+    // ID các phần tử có văn bản chứa query (không phân biệt hoa thường)
+    public List<String> search(String query) {
+        String normalized = normalize(query);
+        List<String> result = new ArrayList<>();
+        if (normalized.length() < 3) {
+            for (int i = 0; i < texts.size(); i++) {
+                String text = texts.get(i);
+                if (text != null && text.contains(normalized)) {
+                    result.add(ids.get(i));
+                }
+            }
+            return result;
+        }
+
+        List<Posting> lists = new ArrayList<>();
+        for (int i = 0; i + 3 <= normalized.length(); i++) {
+            Posting posting = postings.get(key(normalized, i));
+            if (posting == null) {
+                return result;
+            }
+            lists.add(posting);
+        }
+        // Bắt đầu từ danh sách ngắn nhất để tập ứng viên nhỏ ngay từ đầu
+        lists.sort((a, b) -> Integer.compare(a.size, b.size));
+        int[] candidates = Arrays.copyOf(lists.get(0).values, lists.get(0).size);
+        int count = candidates.length;
+        for (int i = 1; i < lists.size() && count > 0; i++) {
+            count = lists.get(i).retainIn(candidates, count);
+        }
+
+        for (int i = 0; i < count; i++) {
+            String text = texts.get(candidates[i]);
+            // Đủ trigram chưa chắc đã đúng thứ tự nên kiểm tra lại trên văn bản
+            if (text != null && text.contains(normalized)) {
+                result.add(ids.get(candidates[i]));
+            }
+        }
+        return result;
+    }
+
+    private void removePosting(long key, int ordinal) {
+        Posting posting = postings.get(key);
+        if (posting != null && posting.remove(ordinal) && posting.size == 0) {
+            postings.remove(key);
+        }
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT);
+    }
+
+    private interface TrigramAction {
+        void accept(long key);
+    }
+
+    private static void forEachTrigram(String text, TrigramAction action) {
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            action.accept(key(text, i));
+        }
+    }
+
+    // Ghép 3 ký tự UTF-16 thành một khóa long để khỏi tạo chuỗi con
+    private static long key(String text, int i) {
+        return ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+    }
+
+    // Danh sách số thứ tự phần tử, luôn tăng dần và không trùng
+    private static class Posting {
+        private int[] values = new int[4];
+        private int size = 0;
+
+        void add(int value) {
+            if (size > 0 && values[size - 1] >= value) {
+                int pos = Arrays.binarySearch(values, 0, size, value);
+                if (pos >= 0) {
+                    return;
+                }
+                insertAt(-pos - 1, value);
+                return;
+            }
+            insertAt(size, value);
+        }
+
+        boolean remove(int value) {
+            int pos = Arrays.binarySearch(values, 0, size, value);
+            if (pos < 0) {
+                return false;
+            }
+            System.arraycopy(values, pos + 1, values, pos, size - pos - 1);
+            size--;
+            return true;
+        }
+
+        // Giữ lại trong candidates[0..count) các giá trị có trong danh sách này, trả về số còn lại
+        int retainIn(int[] candidates, int count) {
+            int kept = 0;
+            int from = 0;
+            for (int i = 0; i < count; i++) {
+                int pos = Arrays.binarySearch(values, from, size, candidates[i]);
+                if (pos >= 0) {
+                    candidates[kept++] = candidates[i];
+                    from = pos + 1;
+                } else {
+                    from = -pos - 1;
+                }
+            }
+            return kept;
+        }
+
+        private void insertAt(int pos, int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            System.arraycopy(values, pos, values, pos + 1, size - pos);
+            values[pos] = value;
+            size++;
+        }
+    }
+}
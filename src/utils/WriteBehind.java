@@ -0,0 +1,222 @@
+package utils;
+
+import interfaces.SystemInterfaces.Identifiable;
+import interfaces.SystemInterfaces.Printable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Ghi trễ (write-behind) cho một file danh sách: mỗi lần sửa hoặc xóa chỉ ghi nối một dòng vào nhật ký
+// (<file>.journal, đã fsync trước khi báo thành công) và đánh dấu thực thể là "bẩn"; nhiều lần sửa cùng
+// một thực thể gộp làm một. File danh sách chỉ được ghi lại toàn bộ một lần cho cả loạt thay đổi: sau
+// FLUSH_DELAY_MILLIS kể từ thay đổi đầu tiên, khi số thực thể bẩn đạt FLUSH_THRESHOLD, hoặc khi tắt
+// chương trình. Nhật ký chỉ được cắt sau khi file đã ghi xong; nếu chương trình chết giữa chừng, lần load
+// sau áp lại nhật ký lên dữ liệu đọc từ file (áp lại nhiều lần vẫn cho cùng kết quả).
+public class WriteBehind<T extends Identifiable & Printable> {
+    private static final long FLUSH_DELAY_MILLIS = 5_000;
+    private static final int FLUSH_THRESHOLD = 200;
+    private static final String PUT = "PUT";
+    private static final String DELETE = "DEL";
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "write-behind");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final List<WriteBehind<?>> INSTANCES = new CopyOnWriteArrayList<>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(
+            () -> INSTANCES.forEach(WriteBehind::flushQuietly), "write-behind-flush"));
+    }
+
+    // null khi không cần nhật ký vì thay đổi đã được ghi bền ở nơi khác (ví dụ products.dat)
+    private final Path journal;
+    private final Function<String, T> parser;
+    // Ghi lại toàn bộ file từ dữ liệu hiện có trong bộ nhớ
+    private final Supplier<CompletableFuture<Void>> writer;
+    private final Set<String> dirty = new LinkedHashSet<>();
+    // Số dòng nhật ký đã gửi ghi, để chỉ cắt đúng phần đã có trong file vừa ghi
+    private int journalLines = 0;
+    private boolean scheduled = false;
+    private boolean closed = false;
+    private final Object flushLock = new Object();
+
+    public WriteBehind(Path journal, Function<String, T> parser, Supplier<CompletableFuture<Void>> writer) {
+        this.journal = journal;
+        this.parser = parser;
+        this.writer = writer;
+        INSTANCES.add(this);
+    }
+
+    // Ghi nhận thực thể đã được sửa (hoặc thêm) trong bộ nhớ
+    public void put(T item) {
+        record(PUT, item.getId(), item.getInfo());
+    }
+
+    // Ghi nhận thực thể đã bị xóa khỏi bộ nhớ
+    public void remove(String id) {
+        record(DELETE, id, id);
+    }
+
+    public synchronized int getDirtyCount() {
+        return dirty.size();
+    }
+
+    // Áp nhật ký còn lại lên dữ liệu vừa đọc từ file và lên lịch ghi lại file
+    public List<T> replay(List<T> loaded) {
+        List<String> lines = readJournal();
+        synchronized (this) {
+            journalLines = lines.size();
+        }
+        if (lines.isEmpty()) {
+            return loaded;
+        }
+        Map<String, T> byId = new LinkedHashMap<>();
+        for (T item : loaded) {
+            byId.putIfAbsent(item.getId(), item);
+        }
+        List<String> changed = new ArrayList<>();
+        for (String line : lines) {
+            int tab = line.indexOf('\t');
+            if (tab < 0) {
+                continue;
+            }
+            String type = line.substring(0, tab);
+            String text = line.substring(tab + 1);
+            if (type.equals(DELETE)) {
+                byId.remove(text);
+                changed.add(text);
+            } else if (type.equals(PUT)) {
+                T item = parser.apply(text);
+                if (item != null) {
+                    byId.put(item.getId(), item);
+                    changed.add(item.getId());
+                }
+            }
+        }
+        synchronized (this) {
+            dirty.addAll(changed);
+            schedule();
+        }
+        return new ArrayList<>(byId.values());
+    }
+
+    // Ghi lại file ngay nếu có thay đổi chưa ghi
+    public void flush() throws IOException {
+        synchronized (flushLock) {
+            Set<String> taken;
+            int flushedLines;
+            synchronized (this) {
+                scheduled = false;
+                if (dirty.isEmpty()) {
+                    return;
+                }
+                taken = new LinkedHashSet<>(dirty);
+                dirty.clear();
+                flushedLines = journalLines;
+            }
+            try {
+                WriteQueue.await(writer.get());
+                if (journal != null && flushedLines > 0) {
+                    // Thay đổi ghi nhật ký sau lúc lấy dữ liệu vẫn nằm lại trong nhật ký và trong tập bẩn
+                    WriteQueue.await(WriteQueue.shared().update(journal,
+                        lines -> new ArrayList<>(lines.subList(Math.min(flushedLines, lines.size()), lines.size()))));
+                    synchronized (this) {
+                        journalLines -= flushedLines;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                synchronized (this) {
+                    dirty.addAll(taken);
+                    schedule();
+                }
+                throw e;
+            }
+        }
+    }
+
+    // Ghi nốt thay đổi còn lại và thôi đăng ký với shutdown hook; không nhận thêm thay đổi sau đó
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+        }
+        try {
+            flush();
+        } finally {
+            INSTANCES.remove(this);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Loi khi ghi tre du lieu: " + e.getMessage());
+        }
+    }
+
+    private void record(String type, String id, String text) {
+        CompletableFuture<Void> logged = null;
+        synchronized (this) {
+            if (closed) {
+                throw new RuntimeException("Bo ghi tre da dong!");
+            }
+            if (journal != null) {
+                // Gửi ghi trong khóa để thứ tự dòng nhật ký khớp với journalLines
+                logged = WriteQueue.shared().append(journal, null, List.of(type + "\t" + text));
+                journalLines++;
+            }
+            dirty.add(id);
+            if (dirty.size() >= FLUSH_THRESHOLD) {
+                SCHEDULER.execute(this::flushQuietly);
+            } else {
+                schedule();
+            }
+        }
+        if (logged != null) {
+            // Chờ fsync ngoài khóa để nhiều luồng sửa cùng lúc vẫn được gộp chung một lần ghi đĩa
+            try {
+                WriteQueue.await(logged);
+            } catch (IOException e) {
+                throw new RuntimeException("Ghi nhat ky thay doi that bai!", e);
+            }
+        }
+    }
+
+    private void schedule() {
+        if (!scheduled && !dirty.isEmpty()) {
+            scheduled = true;
+            SCHEDULER.schedule(this::flushQuietly, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private List<String> readJournal() {
+        if (journal == null) {
+            return new ArrayList<>();
+        }
+        ProcessFileLock.Hold hold = FileHandler.lockFor(journal).lockShared();
+        try {
+            return Files.exists(journal) ? Files.readAllLines(journal, StandardCharsets.UTF_8) : new ArrayList<>();
+        } catch (IOException e) {
+            System.err.println("Loi khi doc nhat ky thay doi: " + e.getMessage());
+            return new ArrayList<>();
+        } finally {
+            hold.close();
+        }
+    }
+}
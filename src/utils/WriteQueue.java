@@ -0,0 +1,262 @@
+package utils;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+// Hàng đợi ghi dùng chung cho các file văn bản: mọi yêu cầu ghi được đưa vào một hàng đợi có giới hạn
+// và chỉ một luồng ghi thực hiện. Luồng ghi lấy hết các yêu cầu đang chờ thành một lô và gộp theo file:
+// chỉ có ghi nối thì ghi một lần, có ghi đè hoặc sửa thì đọc file một lần, áp lần lượt trong bộ nhớ
+// rồi ghi lại một lần. Mỗi file được fsync một lần cho cả lô (group commit), và mỗi yêu cầu có một
+// CompletableFuture hoàn tất khi dữ liệu đã xuống đĩa cho ai cần chờ.
+public class WriteQueue {
+    private static final int CAPACITY = 1024;
+    private static final WriteQueue SHARED = new WriteQueue();
+
+    private enum Kind { APPEND, REPLACE, UPDATE, BARRIER }
+
+    private final BlockingQueue<Request> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong syncCount = new AtomicLong();
+
+    private WriteQueue() {
+        Thread writer = new Thread(this::run, "file-writer");
+        writer.setDaemon(true);
+        writer.start();
+        // Luồng ghi là daemon nên phải ghi nốt hàng đợi trước khi JVM thoát
+        try {
+            Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "file-writer-flush"));
+        } catch (IllegalStateException e) {
+            // Lần ghi đầu tiên xảy ra ngay trong lúc tắt (từ một shutdown hook khác): nơi gọi tự chờ kết quả
+        }
+    }
+
+    public static WriteQueue shared() {
+        return SHARED;
+    }
+
+    // Ghi nối các dòng vào cuối file; file chưa có thì bắt đầu bằng header (nếu có)
+    public CompletableFuture<Void> append(Path path, String header, List<String> lines) {
+        return submit(new Request(Kind.APPEND, path, header, List.copyOf(lines), null));
+    }
+
+    // Ghi đè toàn bộ file (ghi file tạm rồi đổi tên nguyên tử)
+    public CompletableFuture<Void> replace(Path path, List<String> lines) {
+        return submit(new Request(Kind.REPLACE, path, null, List.copyOf(lines), null));
+    }
+
+    // Sửa nội dung file: update nhận các dòng hiện tại (rỗng nếu chưa có file) và trả về nội dung mới.
+    // update chạy trên luồng ghi; ngoại lệ của nó chỉ làm hỏng yêu cầu này
+    public CompletableFuture<Void> update(Path path, UnaryOperator<List<String>> update) {
+        return submit(new Request(Kind.UPDATE, path, null, null, update));
+    }
+
+    // Chờ mọi yêu cầu đã gửi trước đó được ghi xong
+    public void flush() {
+        submit(new Request(Kind.BARRIER, null, null, null, null)).join();
+    }
+
+    // Chờ một yêu cầu ghi, trả lại IOException hoặc RuntimeException gốc cho nơi gọi
+    public static void await(CompletableFuture<Void> write) throws IOException {
+        try {
+            write.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+    // Số yêu cầu đã ghi và số lần fsync, để đo mức gộp ghi
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getSyncCount() {
+        return syncCount.get();
+    }
+
+    private CompletableFuture<Void> submit(Request request) {
+        try {
+            // Hàng đợi đầy thì nơi gọi phải chờ, không để yêu cầu ghi dồn vô hạn trong bộ nhớ
+            queue.put(request);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            request.future.completeExceptionally(e);
+        }
+        return request.future;
+    }
+
+    private void run() {
+        List<Request> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch);
+
+            Map<Path, List<Request>> byPath = new LinkedHashMap<>();
+            List<Request> barriers = new ArrayList<>();
+            for (Request request : batch) {
+                if (request.kind == Kind.BARRIER) {
+                    barriers.add(request);
+                } else {
+                    byPath.computeIfAbsent(request.path, key -> new ArrayList<>()).add(request);
+                }
+            }
+            for (Map.Entry<Path, List<Request>> entry : byPath.entrySet()) {
+                write(entry.getKey(), entry.getValue());
+            }
+            for (Request barrier : barriers) {
+                barrier.future.complete(null);
+            }
+            batch.clear();
+        }
+    }
+
+    // Ghi mọi yêu cầu của một file trong lô bằng một lần ghi và một lần fsync
+    private void write(Path path, List<Request> requests) {
+        ProcessFileLock.Hold hold = FileHandler.lockFor(path).lockExclusive();
+        try {
+            boolean appendOnly = requests.stream().allMatch(request -> request.kind == Kind.APPEND);
+            if (appendOnly) {
+                appendAll(path, requests);
+            } else {
+                rewrite(path, requests);
+            }
+            FileHandler.nextGeneration(path);
+            syncCount.incrementAndGet();
+            requestCount.addAndGet(requests.size());
+            for (Request request : requests) {
+                request.future.complete(null);
+            }
+        } catch (IOException | RuntimeException e) {
+            for (Request request : requests) {
+                request.future.completeExceptionally(e);
+            }
+        } finally {
+            hold.close();
+        }
+    }
+
+    private static void appendAll(Path path, List<Request> requests) throws IOException {
+        List<String> lines = new ArrayList<>();
+        if (!Files.exists(path)) {
+            if (requests.get(0).header != null) {
+                lines.add(requests.get(0).header);
+            }
+        } else if (!endsWithNewline(path)) {
+            // File bị sửa tay và thiếu dấu xuống dòng cuối cùng
+            lines.add("");
+        }
+        for (Request request : requests) {
+            lines.addAll(request.lines);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            writeFully(channel, lines);
+            channel.force(true);
+        }
+    }
+
+    private static void rewrite(Path path, List<Request> requests) throws IOException {
+        boolean exists = Files.exists(path);
+        // Bắt đầu bằng ghi đè thì không cần đọc nội dung cũ
+        List<String> content = requests.get(0).kind == Kind.REPLACE || !exists
+            ? new ArrayList<>() : Files.readAllLines(path, StandardCharsets.UTF_8);
+        for (Request request : requests) {
+            switch (request.kind) {
+                case REPLACE -> {
+                    content = new ArrayList<>(request.lines);
+                    exists = true;
+                }
+                case APPEND -> {
+                    if (!exists && request.header != null) {
+                        content.add(request.header);
+                    }
+                    content.addAll(request.lines);
+                    exists = true;
+                }
+                case UPDATE -> {
+                    try {
+                        content = new ArrayList<>(request.update.apply(content));
+                        exists = true;
+                    } catch (RuntimeException e) {
+                        request.future.completeExceptionally(e);
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, content);
+            channel.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Mỗi dòng kết thúc bằng dấu xuống dòng của hệ thống, giống Files.write
+    private static void writeFully(FileChannel channel, List<String> lines) throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (String line : lines) {
+            text.append(line).append(System.lineSeparator());
+        }
+        ByteBuffer buffer = StandardCharsets.UTF_8.encode(text.toString());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static boolean endsWithNewline(Path path) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
+            if (file.length() == 0) {
+                return true;
+            }
+            file.seek(file.length() - 1);
+            return file.read() == '\n';
+        }
+    }
+
+    private static class Request {
+        private final Kind kind;
+        private final Path path;
+        private final String header;
+        private final List<String> lines;
+        private final UnaryOperator<List<String>> update;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Request(Kind kind, Path path, String header, List<String> lines, UnaryOperator<List<String>> update) {
+            this.kind = kind;
+            this.path = path == null ? null : path.toAbsolutePath().normalize();
+            this.header = header;
+            this.lines = lines;
+            this.update = update;
+        }
+    }
+}